@@ -0,0 +1,156 @@
+package brandon.inference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations on the value (width 10) and cell (width 81) bitvectors.  Each
+ * invocation runs an operation over a fixed set of random operand pairs so
+ * that the results can't be constant folded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class BitvectorBenchmark
+{
+  private static final int OPERANDS = 1024;
+
+  @Param({"false", "true"})
+  public boolean compact;
+
+  private Bitvector[] values;
+  private Bitvector[] cells;
+  private CellSet[] cellSets;
+  private CellSet scratch;
+
+  @Setup
+  public void setUp()
+  {
+    Random rnd = new Random(0);
+
+    BitvectorFactory valueFactory = new PrecomputedBitvectorFactory(Cells.N + 1, compact);
+    values = new Bitvector[OPERANDS];
+    for(int i = 0; i < OPERANDS; i++) {
+      values[i] = valueFactory.getNone();
+      for(int bit = 0; bit <= Cells.N; bit++) {
+        if(rnd.nextBoolean()) {
+          values[i] = values[i].union(valueFactory.encode(bit));
+        }
+      }
+    }
+
+    BitvectorFactory cellFactory = Bitvectors.getFactory(Cells.NUM_CELLS);
+    cells = new Bitvector[OPERANDS];
+    cellSets = new CellSet[OPERANDS];
+    for(int i = 0; i < OPERANDS; i++) {
+      cells[i] = cellFactory.getNone();
+      cellSets[i] = new CellSet();
+      for(int bit = 0; bit < Cells.NUM_CELLS; bit++) {
+        if(rnd.nextInt(4) == 0) {
+          cells[i] = cells[i].union(cellFactory.encode(bit));
+          cellSets[i].add(bit);
+        }
+      }
+    }
+
+    scratch = new CellSet();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERANDS)
+  public void precomputedIntersect(Blackhole bh)
+  {
+    for(int i = 0; i < OPERANDS; i++) {
+      bh.consume(values[i].intersect(values[OPERANDS - 1 - i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERANDS)
+  public void precomputedUnion(Blackhole bh)
+  {
+    for(int i = 0; i < OPERANDS; i++) {
+      bh.consume(values[i].union(values[OPERANDS - 1 - i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERANDS)
+  public void precomputedSubtract(Blackhole bh)
+  {
+    for(int i = 0; i < OPERANDS; i++) {
+      bh.consume(values[i].subtract(values[OPERANDS - 1 - i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERANDS)
+  public void precomputedGetBits(Blackhole bh)
+  {
+    for(int i = 0; i < OPERANDS; i++) {
+      bh.consume(values[i].getBits());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERANDS)
+  public void longIntersect(Blackhole bh)
+  {
+    for(int i = 0; i < OPERANDS; i++) {
+      bh.consume(cells[i].intersect(cells[OPERANDS - 1 - i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERANDS)
+  public void longUnion(Blackhole bh)
+  {
+    for(int i = 0; i < OPERANDS; i++) {
+      bh.consume(cells[i].union(cells[OPERANDS - 1 - i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERANDS)
+  public void longSubtract(Blackhole bh)
+  {
+    for(int i = 0; i < OPERANDS; i++) {
+      bh.consume(cells[i].subtract(cells[OPERANDS - 1 - i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERANDS)
+  public void longGetBitCount(Blackhole bh)
+  {
+    for(int i = 0; i < OPERANDS; i++) {
+      bh.consume(cells[i].getBitCount());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERANDS)
+  public void cellSetIntersect(Blackhole bh)
+  {
+    for(int i = 0; i < OPERANDS; i++) {
+      bh.consume(scratch.setIntersection(cellSets[i], cellSets[OPERANDS - 1 - i]).size());
+    }
+  }
+}
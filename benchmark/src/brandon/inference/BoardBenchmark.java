@@ -0,0 +1,115 @@
+package brandon.inference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sudoku.benchmark.Puzzles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Board level hot paths of the inference solver.  Boards are the puzzles of
+ * a bucket after their givens have been placed, skipping any that placing the
+ * givens already solved.  Benchmarks that mutate a board work on a copy, so
+ * their scores include the cost of <code>fromBoard</code>.
+ *
+ * Lives in <code>brandon.inference</code> to reach the package private
+ * <code>Solver.inferHiddenSingles</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class BoardBenchmark
+{
+  @Param({"EASY", "MEDIUM", "HARD"})
+  public Puzzles.Bucket bucket;
+
+  private int[][][] puzzles;
+  private Board[] boards;
+  private int[] searchIds;
+  private int[] searchValues;
+  private Solver solver;
+  private int next;
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    List<int[][]> arrays = new ArrayList<int[][]>();
+    List<Board> unsolved = new ArrayList<Board>();
+    for(int[][] puzzle : Puzzles.load(bucket)) {
+      Board board = Board.fromArray(puzzle);
+      if(board.getCellToSearch() != -1) {
+        arrays.add(puzzle);
+        unsolved.add(board);
+      }
+    }
+
+    if(unsolved.isEmpty()) {
+      throw new IllegalStateException("every puzzle in bucket " + bucket + " is solved by its givens");
+    }
+
+    puzzles = arrays.toArray(new int[arrays.size()][][]);
+    boards = unsolved.toArray(new Board[unsolved.size()]);
+    searchIds = new int[boards.length];
+    searchValues = new int[boards.length];
+    for(int i = 0; i < boards.length; i++) {
+      searchIds[i] = boards[i].getCellToSearch();
+      searchValues[i] = boards[i].getPossibleValues(searchIds[i])[0];
+    }
+
+    solver = new Solver();
+  }
+
+  private int advance()
+  {
+    int i = next;
+    next = (i + 1) % boards.length;
+    return i;
+  }
+
+  @Benchmark
+  public Board fromArray()
+  {
+    return Board.fromArray(puzzles[advance()]);
+  }
+
+  @Benchmark
+  public Board fromBoard()
+  {
+    return Board.fromBoard(boards[advance()]);
+  }
+
+  @Benchmark
+  public boolean setValue()
+  {
+    int i = advance();
+    Board copy = Board.fromBoard(boards[i]);
+    return copy.setValue(searchIds[i], searchValues[i]);
+  }
+
+  @Benchmark
+  public int getCellToSearch()
+  {
+    return boards[advance()].getCellToSearch();
+  }
+
+  @Benchmark
+  public Board inferHiddenSingles()
+  {
+    Board copy = Board.fromBoard(boards[advance()]);
+    return solver.inferHiddenSingles(copy);
+  }
+}
@@ -0,0 +1,102 @@
+package sudoku.benchmark;
+
+import sudoku.Driver;
+import sudoku.Solver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puzzles from the driver data set, split into difficulty buckets by the
+ * number of givens on the board.
+ */
+public final class Puzzles
+{
+  public enum Bucket
+  {
+    EASY(30, 81),
+    MEDIUM(26, 29),
+    HARD(0, 25);
+
+    private final int minGivens;
+    private final int maxGivens;
+
+    Bucket(int minGivens, int maxGivens)
+    {
+      this.minGivens = minGivens;
+      this.maxGivens = maxGivens;
+    }
+
+    public boolean contains(int[][] board)
+    {
+      int givens = countGivens(board);
+      return minGivens <= givens && givens <= maxGivens;
+    }
+  }
+
+  /**
+   * Load every puzzle in the driver data set that falls in the given bucket.
+   */
+  public static List<int[][]> load(Bucket bucket) throws IOException
+  {
+    InputStream in = ClassLoader.getSystemResourceAsStream(Driver.INPUT_FILENAME);
+    if(in == null) {
+      throw new IOException("unable to find " + Driver.INPUT_FILENAME + " on the classpath");
+    }
+
+    List<int[][]> puzzles = new ArrayList<int[][]>();
+    try {
+      for(int[][] board : Driver.load(in)) {
+        if(bucket.contains(board)) {
+          puzzles.add(board);
+        }
+      }
+    } finally {
+      in.close();
+    }
+
+    if(puzzles.isEmpty()) {
+      throw new IOException("no puzzles in bucket " + bucket);
+    }
+
+    return puzzles;
+  }
+
+  /**
+   * Count the number of cells that have a value.
+   */
+  public static int countGivens(int[][] board)
+  {
+    int count = 0;
+    for(int[] row : board) {
+      for(int value : row) {
+        if(value != Solver.MISSING) {
+          count++;
+        }
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Copy a board into an existing array.
+   */
+  public static int[][] copy(int[][] from, int[][] to)
+  {
+    for(int i = 0; i < from.length; i++) {
+      System.arraycopy(from[i], 0, to[i], 0, from[i].length);
+    }
+
+    return to;
+  }
+
+  /**
+   * Singleton.
+   */
+  private Puzzles()
+  {
+  }
+}
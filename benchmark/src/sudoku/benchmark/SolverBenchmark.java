@@ -0,0 +1,91 @@
+package sudoku.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sudoku.FlatSolver;
+import sudoku.FlatSolverAdapter;
+import sudoku.Solver;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to solve a single board with a complete solver.  Each invocation
+ * solves the next puzzle of the bucket, so the score is the average over the
+ * whole bucket.  The puzzle is copied into a scratch board first because
+ * solvers overwrite their input, the copy is a few nanoseconds.
+ *
+ * <code>solveFlat</code> solves the same puzzles through the flat buffer
+ * interface, one board per invocation out of a buffer holding the bucket.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class SolverBenchmark
+{
+  @Param({"brandon.inference.Solver", "brandon.packed.Solver", "brandon.dlx.Solver", "brandon.bitboard.Solver"})
+  public String solverClassName;
+
+  @Param({"EASY", "MEDIUM", "HARD"})
+  public Puzzles.Bucket bucket;
+
+  private Solver solver;
+  private FlatSolver flatSolver;
+  private int[][][] puzzles;
+  private int[][] scratch;
+  private byte[] flatPuzzles;
+  private byte[] flatScratch;
+  private int next;
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    solver = Class.forName(solverClassName).asSubclass(Solver.class).getDeclaredConstructor().newInstance();
+
+    List<int[][]> boards = Puzzles.load(bucket);
+    puzzles = boards.toArray(new int[boards.size()][][]);
+    scratch = new int[9][9];
+
+    flatSolver = FlatSolverAdapter.adapt(solver);
+    flatPuzzles = new byte[puzzles.length * FlatSolver.NUM_CELLS];
+    flatScratch = new byte[flatPuzzles.length];
+    for(int i = 0; i < puzzles.length; i++) {
+      for(int cell = 0; cell < FlatSolver.NUM_CELLS; cell++) {
+        flatPuzzles[i * FlatSolver.NUM_CELLS + cell] = (byte) puzzles[i][cell / 9][cell % 9];
+      }
+    }
+  }
+
+  @Benchmark
+  public int[][] solve()
+  {
+    int[][] board = Puzzles.copy(puzzles[next], scratch);
+    next = (next + 1) % puzzles.length;
+
+    solver.solve(board);
+    return board;
+  }
+
+  @Benchmark
+  public byte[] solveFlat()
+  {
+    int offset = next * FlatSolver.NUM_CELLS;
+    next = (next + 1) % puzzles.length;
+
+    System.arraycopy(flatPuzzles, offset, flatScratch, offset, FlatSolver.NUM_CELLS);
+    flatSolver.solve(flatScratch, offset);
+    return flatScratch;
+  }
+}
@@ -0,0 +1,266 @@
+package sudoku;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory mapped corpus of boards in a packed binary format.
+ *
+ * The file starts with an 8 byte header: the magic bytes <code>SDKB</code>,
+ * a version byte and three reserved bytes.  It is followed by one 41 byte
+ * record per board, with each cell in 4 bits (0 for a missing cell, 1-9
+ * otherwise).  Two cells share a byte, the earlier cell in the high nibble,
+ * and the low nibble of the last byte is unused.  That is half the size of
+ * the text format, and decoding is a table lookup per pair of cells instead
+ * of a switch per character.  Records are fixed size, so boards can be read
+ * at random just like <code>MappedCorpus</code>.
+ *
+ * Run the class to convert a text corpus:
+ * <pre>
+ *   java sudoku.BinaryCorpus sudoku-inputs.txt sudoku-inputs.bin
+ * </pre>
+ */
+public final class BinaryCorpus implements Corpus
+{
+  private static final byte[] MAGIC = { 'S', 'D', 'K', 'B' };
+  private static final byte VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+
+  /**
+   * Size of a single board's record.
+   */
+  public static final int RECORD_SIZE = (MappedCorpus.NUM_CELLS + 1) / 2;
+
+  /**
+   * Cell values of the high and low nibble of every possible byte.
+   */
+  private static final byte[] HIGH = new byte[256];
+  private static final byte[] LOW = new byte[256];
+  static {
+    for(int b = 0; b < 256; b++) {
+      HIGH[b] = decodeNibble(b >>> 4);
+      LOW[b] = decodeNibble(b & 0xf);
+    }
+  }
+
+  private final MappedByteBuffer[] segments;
+  private final int boardsPerSegment;
+  private final int size;
+
+  private BinaryCorpus(MappedByteBuffer[] segments, int boardsPerSegment, int size)
+  {
+    this.segments = segments;
+    this.boardsPerSegment = boardsPerSegment;
+    this.size = size;
+  }
+
+  /**
+   * Determine whether a file starts with the binary corpus header.
+   */
+  public static boolean isBinary(String filename) throws IOException
+  {
+    RandomAccessFile file = new RandomAccessFile(new File(filename), "r");
+    try {
+      if(file.length() < HEADER_SIZE) {
+        return false;
+      }
+
+      byte[] header = new byte[MAGIC.length];
+      file.readFully(header);
+      for(int i = 0; i < MAGIC.length; i++) {
+        if(header[i] != MAGIC[i]) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Map a binary corpus file.
+   */
+  public static BinaryCorpus open(String filename) throws IOException
+  {
+    RandomAccessFile file = new RandomAccessFile(new File(filename), "r");
+    try {
+      FileChannel channel = file.getChannel();
+      long length = channel.size();
+
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, HEADER_SIZE));
+      if(header.limit() < HEADER_SIZE) {
+        throw new IOException(filename + " is not a binary corpus");
+      }
+      for(int i = 0; i < MAGIC.length; i++) {
+        if(header.get(i) != MAGIC[i]) {
+          throw new IOException(filename + " is not a binary corpus");
+        }
+      }
+      if(header.get(MAGIC.length) != VERSION) {
+        throw new IOException(filename + " has unsupported version " + header.get(MAGIC.length));
+      }
+
+      long count = (length - HEADER_SIZE) / RECORD_SIZE;
+      if(count > Integer.MAX_VALUE || HEADER_SIZE + count * RECORD_SIZE != length) {
+        throw new IOException(filename + " is truncated");
+      }
+
+      int boardsPerSegment = Integer.MAX_VALUE / RECORD_SIZE;
+      int numSegments = (int) ((count + boardsPerSegment - 1) / boardsPerSegment);
+      MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+      for(int i = 0; i < numSegments; i++) {
+        long start = HEADER_SIZE + (long) i * boardsPerSegment * RECORD_SIZE;
+        long end = Math.min(length, start + (long) boardsPerSegment * RECORD_SIZE);
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      }
+
+      // The mappings stay valid once the channel is closed
+      return new BinaryCorpus(segments, boardsPerSegment, (int) count);
+    } finally {
+      file.close();
+    }
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public int getBoardSize()
+  {
+    return 9;
+  }
+
+  public void decode(int index, byte[] cells, int offset)
+  {
+    MappedByteBuffer segment = segmentOf(index);
+    int position = (index % boardsPerSegment) * RECORD_SIZE;
+
+    int cell = 0;
+    for(int i = 0; i < RECORD_SIZE - 1; i++) {
+      int b = segment.get(position + i) & 0xff;
+      cells[offset + cell++] = HIGH[b];
+      cells[offset + cell++] = LOW[b];
+    }
+    cells[offset + cell] = HIGH[segment.get(position + RECORD_SIZE - 1) & 0xff];
+  }
+
+  public int[][] decode(int index, int[][] board)
+  {
+    MappedByteBuffer segment = segmentOf(index);
+    int position = (index % boardsPerSegment) * RECORD_SIZE;
+
+    for(int cell = 0; cell < MappedCorpus.NUM_CELLS; cell += 2) {
+      int b = segment.get(position++) & 0xff;
+      board[cell / 9][cell % 9] = HIGH[b];
+      if(cell + 1 < MappedCorpus.NUM_CELLS) {
+        board[(cell + 1) / 9][(cell + 1) % 9] = LOW[b];
+      }
+    }
+    return board;
+  }
+
+  private MappedByteBuffer segmentOf(int index)
+  {
+    if(index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("board " + index + " of " + size);
+    }
+    return segments[index / boardsPerSegment];
+  }
+
+  private static byte decodeNibble(int nibble)
+  {
+    return (1 <= nibble && nibble <= 9) ? (byte) nibble : (byte) Solver.MISSING;
+  }
+
+  private static int encodeValue(int value)
+  {
+    return (1 <= value && value <= 9) ? value : 0;
+  }
+
+  /**
+   * Writes boards in the binary format.
+   */
+  public static final class Writer implements Closeable
+  {
+    private final OutputStream out;
+    private final byte[] record = new byte[RECORD_SIZE];
+
+    public Writer(OutputStream out) throws IOException
+    {
+      this.out = out;
+      out.write(MAGIC);
+      out.write(new byte[] { VERSION, 0, 0, 0 });
+    }
+
+    public void write(int[][] board) throws IOException
+    {
+      for(int i = 0; i < record.length; i++) {
+        int cell = 2 * i;
+        int high = encodeValue(board[cell / 9][cell % 9]);
+        int low = (cell + 1 < MappedCorpus.NUM_CELLS) ? encodeValue(board[(cell + 1) / 9][(cell + 1) % 9]) : 0;
+        record[i] = (byte) ((high << 4) | low);
+      }
+      out.write(record);
+    }
+
+    public void close() throws IOException
+    {
+      out.close();
+    }
+  }
+
+  /**
+   * Convert a text corpus into a binary one.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    if(args.length != 2) {
+      System.err.println("Usage: java sudoku.BinaryCorpus <text input> <binary output>");
+      System.exit(1);
+    }
+
+    long start = System.nanoTime();
+    long count = 0;
+    long lineNumber = 0;
+
+    BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(args[0])));
+    Writer out = new Writer(new BufferedOutputStream(new FileOutputStream(args[1]), 1 << 16));
+    try {
+      int[][] board = new int[9][9];
+      String line;
+      while((line = in.readLine()) != null) {
+        lineNumber++;
+        if(line.length() == 0) {
+          continue;
+        }
+
+        // Records only hold 9 x 9 boards
+        if(line.length() != MappedCorpus.NUM_CELLS) {
+          throw new IOException(args[0] + " line " + lineNumber + " has " + line.length()
+              + " characters, only 9 x 9 boards of " + MappedCorpus.NUM_CELLS + " can be converted");
+        }
+
+        out.write(Driver.parseBoard(line, board));
+        count++;
+      }
+    } finally {
+      in.close();
+      out.close();
+    }
+    long end = System.nanoTime();
+
+    System.out.printf("Converted %1$d boards: %2$f ms\n", count, (end - start) / (1000. * 1000.));
+  }
+}
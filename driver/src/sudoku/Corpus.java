@@ -0,0 +1,29 @@
+package sudoku;
+
+/**
+ * Random access collection of boards stored outside of the heap.
+ */
+public interface Corpus {
+  /**
+   * Number of boards in the corpus.
+   */
+  int size();
+
+  /**
+   * Number of rows (and columns) of the boards in the corpus, 9 for the usual
+   * 9 x 9 boards.
+   */
+  int getBoardSize();
+
+  /**
+   * Decode a board into a flat buffer of cells (row major, one byte per cell),
+   * starting at the given offset.  Missing cells are
+   * <code>Solver.MISSING</code>.
+   */
+  void decode(int index, byte[] cells, int offset);
+
+  /**
+   * Decode a board into an existing array.
+   */
+  int[][] decode(int index, int[][] board);
+}
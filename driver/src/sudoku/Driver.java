@@ -1,29 +1,62 @@
 package sudoku;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Driver
 {
-  private static final String INPUT_FILENAME = "sudoku-inputs.txt";
-  private static final String OUTPUT_FILENAME = "sudoku-outputs.txt";
+  public static final String INPUT_FILENAME = "sudoku-inputs.txt";
+  public static final String OUTPUT_FILENAME = "sudoku-outputs.txt";
   private static final int MIN_BOARDS = 1000;
 
+  /**
+   * Sizes of board the driver reads, in cells per side.
+   */
+  private static final int[] BOARD_SIZES = { 9, 16, 25 };
+
   public static void main(String... args) throws IOException
   {
     if(args.length == 0) {
-      System.err.println("Usage: java -jar sudoku.jar <Algorithm> [-numtrials num] [-stable] [-real]");
+      System.err.println("Usage: java -jar sudoku.jar <Algorithm> [-numtrials num] [-stable] [-real] [-threads num] [-slowest num] [-report csv|json] [-reportfile file] [-input file] [-expected file] [-flat] [-unique] [-count num] [-set name=value]");
+      System.err.println("       java -jar sudoku.jar <Algorithm> -stream [-input file|-] [-expected file] [-output file|-] [-window num] [-threads num]");
       System.err.println("  -numtrials will run the specified number of trials");
       System.err.println("  -stable will always run the same trials in the same order");
       System.err.println("  -real will solve every input board");
+      System.err.println("  -threads will solve the boards with the specified number of threads");
+      System.err.println("  -slowest will list the specified number of slowest boards (default 10)");
+      System.err.println("  -report will also write the latency report as csv or json");
+      System.err.println("  -reportfile will write the -report output to a file instead of stdout");
+      System.err.println("  -flat will hand the boards to the solver in one flat buffer instead of int[][]s");
+      System.err.println("  -unique will check that every board has exactly one solution instead of solving it");
+      System.err.println("  -count will count the solutions of every board, up to the specified number, instead of solving it");
+      System.err.println("  -set will set a system property before the solver is loaded, to configure it");
+      System.err.println("  -stream will solve boards as they are read instead of loading them all first");
+      System.err.println("  -input will read boards from a text or binary file (memory mapped), or when streaming from stdin for -");
+      System.err.println("  -expected will verify boards against a file of solutions");
+      System.err.println("  -output will write the solved boards to a file, or stdout for -");
+      System.err.println("  -window will bound the number of boards in memory while streaming (default 1024)");
       System.exit(1);
     }
 
@@ -31,6 +64,17 @@ public class Driver
     boolean isReal = false;
     boolean isStable = false;
     int numTrials = MIN_BOARDS;
+    int numThreads = 1;
+    int numSlowest = 10;
+    LatencyReport.Format reportFormat = null;
+    String reportFile = null;
+    boolean isStream = false;
+    String inputFile = null;
+    String expectedFile = null;
+    String outputFile = null;
+    int window = 1024;
+    boolean isFlat = false;
+    int limit = 0;
 
     for(int i = 1; i < args.length; i++) {
       if("-numtrials".equals(args[i])) {
@@ -39,6 +83,38 @@ public class Driver
         isStable = true;
       } else if("-real".equals(args[i])) {
         isReal = true;
+      } else if("-threads".equals(args[i])) {
+        numThreads = Integer.parseInt(args[++i]);
+      } else if("-slowest".equals(args[i])) {
+        numSlowest = Integer.parseInt(args[++i]);
+      } else if("-report".equals(args[i])) {
+        reportFormat = LatencyReport.Format.valueOf(args[++i].toUpperCase());
+      } else if("-reportfile".equals(args[i])) {
+        reportFile = args[++i];
+      } else if("-stream".equals(args[i])) {
+        isStream = true;
+      } else if("-input".equals(args[i])) {
+        inputFile = args[++i];
+      } else if("-expected".equals(args[i])) {
+        expectedFile = args[++i];
+      } else if("-output".equals(args[i])) {
+        outputFile = args[++i];
+      } else if("-flat".equals(args[i])) {
+        isFlat = true;
+      } else if("-window".equals(args[i])) {
+        window = Integer.parseInt(args[++i]);
+      } else if("-unique".equals(args[i])) {
+        limit = 2;
+      } else if("-count".equals(args[i])) {
+        limit = Integer.parseInt(args[++i]);
+      } else if("-set".equals(args[i])) {
+        String property = args[++i];
+        int equals = property.indexOf('=');
+        if(equals < 1) {
+          System.err.println("-set takes a name=value pair");
+          System.exit(2);
+        }
+        System.setProperty(property.substring(0, equals), property.substring(equals + 1));
       }
     }
 
@@ -47,34 +123,85 @@ public class Driver
       System.exit(2);
     }
 
-    Solver solver;
+    if(numThreads < 1) {
+      System.err.println("-threads must be at least 1");
+      System.exit(2);
+    }
+
+    if(limit != 0 && (limit < 1 || isStream || isFlat)) {
+      System.err.println("-unique and -count need a count of at least 1, and cannot be combined with -stream or -flat");
+      System.exit(2);
+    }
+
+    // Every thread gets its own solver instance, solvers are not required to be thread safe
+    Solver[] solvers = new Solver[numThreads];
     {
       long loadStart = System.nanoTime();
       try {
         Class<? extends Solver> cls = Class.forName(solverClassName).asSubclass(Solver.class);
-        solver = cls.newInstance();
+        for(int i = 0; i < solvers.length; i++) {
+          solvers[i] = cls.newInstance();
+        }
       } catch(Exception e) {
         System.err.printf("Unable to instantiate algorithm: %1$s\n", solverClassName);
         System.exit(3);
-        solver = null;  // for the compiler
       }
       long loadEnd = System.nanoTime();
 
-      System.out.printf("Loaded algorithm %1s: %2$f ms\n",
-          solver.getClass().getName(), (loadEnd - loadStart) / (1000. * 1000.));
+      // When streamed solutions go to stdout the progress messages have to go elsewhere
+      PrintStream log = (isStream && "-".equals(outputFile)) ? System.err : System.out;
+      log.printf("Loaded algorithm %1s: %2$f ms\n",
+          solvers[0].getClass().getName(), (loadEnd - loadStart) / (1000. * 1000.));
+    }
+
+    if(limit != 0 && !(solvers[0] instanceof SolutionCounter)) {
+      System.err.printf("%1$s cannot count solutions\n", solverClassName);
+      System.exit(3);
     }
 
-    // Load all of the boards as well as the solutions
-    List<int[][]> boards, solutions;
+    if(isStream) {
+      stream(solvers, inputFile, expectedFile, outputFile, window, numSlowest, reportFormat, reportFile);
+      return;
+    }
+
+    // Load all of the boards as well as the solutions.  Files given with -input are
+    // memory mapped instead, and only the boards that are picked get decoded.
+    List<int[][]> boards = null, solutions = null;
+    Corpus inputCorpus = null, expectedCorpus = null;
+    int numBoards;
     {
       long loadStart = System.nanoTime();
-      boards = load(ClassLoader.getSystemResourceAsStream(INPUT_FILENAME));
-      solutions = load(ClassLoader.getSystemResourceAsStream(OUTPUT_FILENAME));
+      if(inputFile == null) {
+        boards = load(ClassLoader.getSystemResourceAsStream(INPUT_FILENAME));
+        solutions = load(ClassLoader.getSystemResourceAsStream(OUTPUT_FILENAME));
+        numBoards = boards.size();
+        assert boards.size() == solutions.size();
+      } else {
+        inputCorpus = openCorpus(inputFile);
+        expectedCorpus = (expectedFile == null) ? null : openCorpus(expectedFile);
+        numBoards = inputCorpus.size();
+
+        if(expectedCorpus != null && expectedCorpus.size() != numBoards) {
+          System.err.printf("%1$s has %2$d boards but %3$s has %4$d\n",
+              inputFile, numBoards, expectedFile, expectedCorpus.size());
+          System.exit(2);
+        }
+
+        if(expectedCorpus != null && expectedCorpus.getBoardSize() != inputCorpus.getBoardSize()) {
+          System.err.printf("%1$s has %2$dx%2$d boards but %3$s has %4$dx%4$d\n",
+              inputFile, inputCorpus.getBoardSize(), expectedFile, expectedCorpus.getBoardSize());
+          System.exit(2);
+        }
+
+        if(isFlat && inputCorpus.getBoardSize() != 9) {
+          System.err.println("-flat only works with 9x9 boards");
+          System.exit(2);
+        }
+      }
       long loadEnd = System.nanoTime();
 
       System.out.printf("Loaded %1$d boards: %2$f ms\n",
-          boards.size(), (loadEnd - loadStart) / (1000. * 1000.));
-      assert boards.size() == solutions.size();
+          numBoards, (loadEnd - loadStart) / (1000. * 1000.));
     }
 
     // Determine the order in which to solve the boards
@@ -82,14 +209,14 @@ public class Driver
     {
       if(isReal) {
         System.out.println("Preparing all boards for solver in random order.");
-        List<Integer> indices = new ArrayList<Integer>(boards.size());
-        for(int i = 0; i < boards.size(); i++) {
+        List<Integer> indices = new ArrayList<Integer>(numBoards);
+        for(int i = 0; i < numBoards; i++) {
           indices.add(i);
         }
         Collections.shuffle(indices);
 
-        order = new int[boards.size()];
-        for(int i = 0; i < boards.size(); i++) {
+        order = new int[numBoards];
+        for(int i = 0; i < numBoards; i++) {
           order[i] = indices.get(i);
         }
       } else if(isStable) {
@@ -107,7 +234,7 @@ public class Driver
         Set<Integer> seen = new HashSet<Integer>();
         for(int i = 0; i < order.length; i++) {
           while(true) {
-            int r = rnd.nextInt(boards.size());
+            int r = rnd.nextInt(numBoards);
 
             if(seen.add(r)) {
               order[i] = r;
@@ -122,24 +249,64 @@ public class Driver
     List<int[][]> actuals = new ArrayList<int[][]>(order.length);
     List<int[][]> expected = new ArrayList<int[][]>(order.length);
     for(int i = 0; i < order.length; i++) {
-      actuals.add(boards.get(order[i]));
-      expected.add(solutions.get(order[i]));
+      if(inputCorpus == null) {
+        actuals.add(boards.get(order[i]));
+        expected.add(solutions.get(order[i]));
+      } else {
+        int n = inputCorpus.getBoardSize();
+        actuals.add(inputCorpus.decode(order[i], new int[n][n]));
+
+        // Without solutions keep a copy of the givens to check the solution against
+        expected.add((expectedCorpus != null)
+            ? expectedCorpus.decode(order[i], new int[n][n])
+            : inputCorpus.decode(order[i], new int[n][n]));
+      }
     }
     System.out.printf("Running solver on %1$d boards.\n", actuals.size());
 
-    // Solve the baords
+    // Solve the baords, or count their solutions
     int size = actuals.size();
-    long solveStart = System.nanoTime();
-    for(int i = 0; i < size; i++) {
-      solver.solve(actuals.get(i));
+    LatencyHistogram histogram = new LatencyHistogram();
+    SlowestBoards slowest = new SlowestBoards(numSlowest);
+    byte[] cells = isFlat ? pack(actuals) : null;
+    int[] solutionCounts = (limit == 0) ? null : new int[size];
+    if(numThreads == 1) {
+      Worker worker = new Worker(solvers[0], actuals, cells, order, new AtomicInteger(), numSlowest, limit, solutionCounts);
+      long solveStart = System.nanoTime();
+      worker.run();
+      long solveEnd = System.nanoTime();
+
+      double elapsedMs = (solveEnd - solveStart) / (1000. * 1000.);
+      System.out.printf("%1$s %2$d boards: %3$f ms (%4$f boards/s)\n",
+          (limit == 0) ? "Solved" : "Counted solutions of", size, elapsedMs, size / (elapsedMs / 1000.));
+
+      histogram.add(worker.histogram);
+      slowest.add(worker.slowest);
+    } else {
+      solveInParallel(solvers, actuals, cells, order, numSlowest, limit, solutionCounts, histogram, slowest);
+    }
+
+    if(cells != null) {
+      unpack(cells, actuals);
+    }
+
+    LatencyReport report = new LatencyReport(histogram, slowest);
+    report.write(LatencyReport.Format.TEXT, System.out);
+    writeReport(report, reportFormat, reportFile);
+    printCounters(solvers, System.out);
+
+    if(solutionCounts != null) {
+      printSolutionCounts(solutionCounts, limit);
+      return;
     }
-    long solveEnd = System.nanoTime();
-    System.out.printf("Solved %1$d boards: %2$f ms\n", actuals.size(), (solveEnd - solveStart) / (1000. * 1000.));
 
     // Verify solutions
     boolean correct = true;
+    boolean hasSolutions = (inputCorpus == null || expectedCorpus != null);
     for(int i = 0; i < size; i++) {
-      correct &= checkSolution(actuals.get(i), expected.get(i));
+      correct &= hasSolutions
+          ? checkSolution(actuals.get(i), expected.get(i))
+          : isValidSolution(expected.get(i), actuals.get(i));
     }
 
     if(!correct) {
@@ -150,7 +317,328 @@ public class Driver
     }
   }
 
-  private static boolean checkSolution(int[][] actual, int[][] expected)
+  /**
+   * Solve boards as they are read, verifying and optionally writing out each
+   * one, without ever holding more than a window of boards in memory.
+   */
+  private static void stream(Solver[] solvers, String inputFile, String expectedFile, String outputFile,
+                             int window, int numSlowest, LatencyReport.Format reportFormat, String reportFile)
+      throws IOException
+  {
+    BufferedReader input, expected;
+    boolean toStdout = "-".equals(outputFile);
+    PrintStream log = toStdout ? System.err : System.out;
+
+    if(inputFile == null) {
+      log.println("Streaming boards from the default data set.");
+      input = open(ClassLoader.getSystemResourceAsStream(INPUT_FILENAME));
+      expected = open(ClassLoader.getSystemResourceAsStream(OUTPUT_FILENAME));
+    } else {
+      log.printf("Streaming boards from %1$s.\n", "-".equals(inputFile) ? "stdin" : inputFile);
+      input = open("-".equals(inputFile) ? System.in : new FileInputStream(inputFile));
+      expected = (expectedFile == null) ? null : open(new FileInputStream(expectedFile));
+    }
+
+    Writer output = null;
+    if(outputFile != null) {
+      output = new BufferedWriter(new OutputStreamWriter(toStdout ? System.out : new FileOutputStream(outputFile)));
+    }
+
+    Pipeline pipeline = new Pipeline(solvers, window, numSlowest);
+    long solveStart = System.nanoTime();
+    try {
+      pipeline.run(input, expected, output);
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      input.close();
+      if(expected != null) {
+        expected.close();
+      }
+      if(output != null && !toStdout) {
+        output.close();
+      }
+    }
+    long solveEnd = System.nanoTime();
+
+    double elapsedMs = (solveEnd - solveStart) / (1000. * 1000.);
+    log.printf("Solved %1$d boards with %2$d threads: %3$f ms (%4$f boards/s)\n",
+        pipeline.getNumBoards(), solvers.length, elapsedMs, pipeline.getNumBoards() / (elapsedMs / 1000.));
+
+    LatencyReport report = new LatencyReport(pipeline.getHistogram(), pipeline.getSlowest(numSlowest));
+    report.write(LatencyReport.Format.TEXT, log);
+    if(reportFormat != null && toStdout && reportFile == null) {
+      System.err.println("-report needs -reportfile when solutions are written to stdout");
+    } else {
+      writeReport(report, reportFormat, reportFile);
+    }
+    printCounters(solvers, log);
+
+    if(pipeline.getNumIncorrect() != 0) {
+      System.out.flush();
+      System.err.flush();
+      System.err.printf("Incorrect solutions: %1$d\n", pipeline.getNumIncorrect());
+      System.exit(4);
+    }
+  }
+
+  /**
+   * Map a corpus file, in either the text or the binary format.
+   */
+  private static Corpus openCorpus(String filename) throws IOException
+  {
+    if(BinaryCorpus.isBinary(filename)) {
+      return BinaryCorpus.open(filename);
+    }
+    return MappedCorpus.open(filename);
+  }
+
+  private static BufferedReader open(InputStream in) throws IOException
+  {
+    if(in == null) {
+      throw new FileNotFoundException("input not found");
+    }
+    return new BufferedReader(new InputStreamReader(in));
+  }
+
+  /**
+   * Write the latency report in the requested format, if any, to a file or to
+   * stdout.
+   */
+  private static void writeReport(LatencyReport report, LatencyReport.Format format, String file) throws IOException
+  {
+    if(format == null) {
+      return;
+    }
+
+    if(file == null) {
+      report.write(format, System.out);
+      return;
+    }
+
+    PrintStream out = new PrintStream(new FileOutputStream(file));
+    try {
+      report.write(format, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Copy every board into a single flat buffer, one after another.
+   */
+  private static byte[] pack(List<int[][]> boards)
+  {
+    byte[] cells = new byte[boards.size() * FlatSolver.NUM_CELLS];
+
+    int index = 0;
+    for(int[][] board : boards) {
+      for(int[] row : board) {
+        for(int value : row) {
+          cells[index++] = (byte) value;
+        }
+      }
+    }
+
+    return cells;
+  }
+
+  /**
+   * Copy the boards in a flat buffer back into their arrays.
+   */
+  private static void unpack(byte[] cells, List<int[][]> boards)
+  {
+    int index = 0;
+    for(int[][] board : boards) {
+      for(int[] row : board) {
+        for(int j = 0; j < row.length; j++) {
+          row[j] = cells[index++];
+        }
+      }
+    }
+  }
+
+  /**
+   * Solve the boards using one worker thread per solver.  Workers pull the
+   * next unsolved board from a shared counter so that a run of hard boards
+   * doesn't leave the other workers idle.
+   */
+  private static void solveInParallel(Solver[] solvers, List<int[][]> actuals, byte[] cells, int[] ids, int numSlowest,
+                                      int limit, int[] solutionCounts, LatencyHistogram histogram,
+                                      SlowestBoards slowest)
+  {
+    final int size = actuals.size();
+    final AtomicInteger next = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+
+    Worker[] workers = new Worker[solvers.length];
+    ExecutorService executor = Executors.newFixedThreadPool(solvers.length);
+    List<Future<?>> futures = new ArrayList<Future<?>>(solvers.length);
+    for(int i = 0; i < solvers.length; i++) {
+      final Worker worker = workers[i] = new Worker(solvers[i], actuals, cells, ids, next, numSlowest, limit,
+          solutionCounts);
+      futures.add(executor.submit(new Callable<Void>() {
+        public Void call() throws Exception
+        {
+          start.await();
+          worker.run();
+          return null;
+        }
+      }));
+    }
+
+    long solveStart = System.nanoTime();
+    start.countDown();
+
+    try {
+      for(Future<?> future : futures) {
+        future.get();
+      }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch(ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    long solveEnd = System.nanoTime();
+
+    double elapsedMs = (solveEnd - solveStart) / (1000. * 1000.);
+    System.out.printf("%1$s %2$d boards with %3$d threads: %4$f ms (%5$f boards/s)\n",
+        (limit == 0) ? "Solved" : "Counted solutions of", size, solvers.length, elapsedMs, size / (elapsedMs / 1000.));
+
+    for(int i = 0; i < workers.length; i++) {
+      System.out.printf("  thread %1$d: %2$d boards, %3$f ms\n",
+          i, workers[i].count, workers[i].elapsed / (1000. * 1000.));
+
+      histogram.add(workers[i].histogram);
+      slowest.add(workers[i].slowest);
+    }
+  }
+
+  /**
+   * Solves boards until there are none left, timing each one.
+   */
+  private static final class Worker implements Runnable
+  {
+    private final Solver solver;
+    private final List<int[][]> actuals;
+    private final int[] ids;
+    private final AtomicInteger next;
+
+    /**
+     * Flat buffer holding every board when solving in -flat mode, otherwise
+     * null.
+     */
+    private final byte[] cells;
+    private final FlatSolver flatSolver;
+
+    /**
+     * Most solutions to count for each board, or 0 to solve the boards.  The
+     * counts go in solutionCounts, which is shared between the workers.
+     */
+    private final int limit;
+    private final int[] solutionCounts;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final SlowestBoards slowest;
+    private long count;
+    private long elapsed;
+
+    Worker(Solver solver, List<int[][]> actuals, byte[] cells, int[] ids, AtomicInteger next, int numSlowest,
+           int limit, int[] solutionCounts)
+    {
+      this.solver = solver;
+      this.actuals = actuals;
+      this.cells = cells;
+      this.flatSolver = (cells == null) ? null : FlatSolverAdapter.adapt(solver);
+      this.ids = ids;
+      this.next = next;
+      this.slowest = new SlowestBoards(numSlowest);
+      this.limit = limit;
+      this.solutionCounts = solutionCounts;
+    }
+
+    public void run()
+    {
+      int size = actuals.size();
+
+      long workerStart = System.nanoTime();
+      for(int i = next.getAndIncrement(); i < size; i = next.getAndIncrement()) {
+        long boardStart = System.nanoTime();
+        if(limit != 0) {
+          solutionCounts[i] = ((SolutionCounter) solver).countSolutions(actuals.get(i), limit);
+        } else if(cells == null) {
+          solver.solve(actuals.get(i));
+        } else {
+          flatSolver.solve(cells, i * FlatSolver.NUM_CELLS);
+        }
+        long latency = System.nanoTime() - boardStart;
+
+        histogram.record(latency);
+        slowest.record(ids[i], latency);
+        count++;
+      }
+      elapsed = System.nanoTime() - workerStart;
+    }
+  }
+
+  /**
+   * Print how many boards had each number of solutions.  Boards with at least
+   * the limit are counted together.
+   */
+  private static void printSolutionCounts(int[] solutionCounts, int limit)
+  {
+    int[] totals = new int[limit + 1];
+    for(int count : solutionCounts) {
+      totals[count]++;
+    }
+
+    System.out.println("Solution counts:");
+    if(limit == 2) {
+      System.out.printf("  no solution: %1$d\n", totals[0]);
+      System.out.printf("  unique: %1$d\n", totals[1]);
+      System.out.printf("  multiple: %1$d\n", totals[2]);
+      return;
+    }
+
+    for(int count = 0; count <= limit; count++) {
+      System.out.printf("  %1$d%2$s: %3$d\n", count, (count == limit) ? " or more" : "", totals[count]);
+    }
+  }
+
+  /**
+   * Print the counters of instrumented solvers, added up across all of the
+   * solver instances.
+   */
+  private static void printCounters(Solver[] solvers, PrintStream out)
+  {
+    if(!(solvers[0] instanceof Instrumented)) {
+      return;
+    }
+
+    String[] names = ((Instrumented) solvers[0]).getCounterNames();
+    if(names.length == 0) {
+      return;
+    }
+
+    long[] totals = new long[names.length];
+    for(Solver solver : solvers) {
+      long[] counters = ((Instrumented) solver).getCounters();
+      for(int i = 0; i < totals.length; i++) {
+        totals[i] += counters[i];
+      }
+    }
+
+    out.println("Solver counters:");
+    for(int i = 0; i < names.length; i++) {
+      out.printf("  %1$s: %2$d\n", names[i], totals[i]);
+    }
+  }
+
+  static boolean checkSolution(int[][] actual, int[][] expected)
   {
     for(int i = 0; i < actual.length; i++) {
       for(int j = 0; j < actual.length; j++) {
@@ -163,46 +651,141 @@ public class Driver
     return true;
   }
 
-  private static List<int[][]> load(InputStream in) throws IOException
+  /**
+   * Check that a board is a complete, valid solution that keeps all of the
+   * givens of the puzzle it was solved from.
+   */
+  static boolean isValidSolution(int[][] puzzle, int[][] actual)
+  {
+    int n = actual.length;
+    int boxSize = (int) Math.round(Math.sqrt(n));
+    int all = (1 << (n + 1)) - 2;
+
+    for(int i = 0; i < n; i++) {
+      int row = 0, column = 0, box = 0;
+
+      for(int j = 0; j < n; j++) {
+        if(puzzle[i][j] != Solver.MISSING && puzzle[i][j] != actual[i][j]) {
+          return false;
+        }
+
+        int r = boxSize * (i / boxSize) + j / boxSize;
+        int c = boxSize * (i % boxSize) + j % boxSize;
+
+        row |= bit(actual[i][j], n);
+        column |= bit(actual[j][i], n);
+        box |= bit(actual[r][c], n);
+      }
+
+      if(row != all || column != all || box != all) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static int bit(int value, int n)
+  {
+    return (1 <= value && value <= n) ? (1 << value) : 0;
+  }
+
+  /**
+   * Load every board in a stream, one board per line.
+   */
+  public static List<int[][]> load(InputStream in) throws IOException
   {
     List<int[][]> boards = new ArrayList<int[][]>();
     BufferedReader reader = new BufferedReader(new InputStreamReader(in));
 
     String line;
+    long lineNumber = 0;
     while((line = reader.readLine()) != null) {
-      int[][] board = parseBoard(line);
-      boards.add(board);
+      lineNumber++;
+      try {
+        boards.add(parseBoard(line));
+      } catch(IllegalArgumentException e) {
+        throw new IOException("line " + lineNumber + ": " + e.getMessage(), e);
+      }
     }
 
     return boards;
   }
 
-  private static int[][] parseBoard(String line)
+  /**
+   * Size of the board held by a line of the given length, 9 for 81
+   * characters, 16 for 256 and 25 for 625, or 0 if the line doesn't hold a
+   * board of a supported size.
+   */
+  public static int getBoardSize(int length)
   {
-    int[][] board = new int[9][9];
+    for(int n : BOARD_SIZES) {
+      if(length == n * n) {
+        return n;
+      }
+    }
+    return 0;
+  }
 
-    for(int i = 0; i < board.length; i++) {
-      for(int j = 0; j < board.length; j++) {
-        board[i][j] = parseChar(line.charAt(9 * i + j));
+  /**
+   * Parse a board from its one character per cell representation, 81
+   * characters for a 9 x 9 board, 256 for a 16 x 16 board and 625 for a
+   * 25 x 25 board.  The size of the board is taken from the length of the
+   * line.
+   */
+  public static int[][] parseBoard(String line)
+  {
+    int n = getBoardSize(line.length());
+    if(n == 0) {
+      throw new IllegalArgumentException("A line of " + line.length()
+          + " characters isn't a 9 x 9, 16 x 16 or 25 x 25 board");
+    }
+    return parseBoard(line, new int[n][n]);
+  }
+
+  /**
+   * Parse a board from its one character per cell representation into an
+   * existing array, which determines the size of the board.  The line must
+   * have exactly one character per cell.
+   */
+  public static int[][] parseBoard(String line, int[][] board)
+  {
+    int n = board.length;
+    if(line.length() != n * n) {
+      throw new IllegalArgumentException("Expected a board of " + (n * n) + " cells, got a line of "
+          + line.length() + " characters");
+    }
+
+    for(int i = 0; i < n; i++) {
+      for(int j = 0; j < n; j++) {
+        board[i][j] = parseChar(line.charAt(n * i + j), n);
       }
     }
     return board;
   }
 
-  private static int parseChar(char c)
+  /**
+   * Append the one character per cell representation of a board, the inverse
+   * of <code>parseBoard</code>.
+   */
+  public static StringBuilder formatBoard(int[][] board, StringBuilder sb)
   {
-    switch(c) {
-      case '1': return 1;
-      case '2': return 2;
-      case '3': return 3;
-      case '4': return 4;
-      case '5': return 5;
-      case '6': return 6;
-      case '7': return 7;
-      case '8': return 8;
-      case '9': return 9;
+    for(int[] row : board) {
+      for(int value : row) {
+        sb.append((value == Solver.MISSING) ? '.' : Character.toUpperCase(Character.forDigit(value, Character.MAX_RADIX)));
+      }
     }
+    return sb;
+  }
 
-    return Solver.MISSING;
+  /**
+   * Parse the value of a cell of an N x N board.  Values 1 to 9 are digits and
+   * values from 10 up are letters, A (or a) for 10 through P for 25.  Anything
+   * else, or a value bigger than N, is a missing cell.
+   */
+  static int parseChar(char c, int n)
+  {
+    int value = Character.digit(c, Character.MAX_RADIX);
+    return (1 <= value && value <= n) ? value : Solver.MISSING;
   }
 }
@@ -0,0 +1,35 @@
+package sudoku;
+
+/**
+ * Interface for a sudoku solver that can work directly on boards stored in
+ * a flat buffer, row major with 81 cells per board.  Many boards can sit one
+ * after another in the same buffer.  Cells use the same values as
+ * <code>Solver</code>, with <code>Solver.MISSING</code> for a missing cell.
+ *
+ * Any solver can be used through this interface with
+ * <code>FlatSolverAdapter.adapt</code>.
+ */
+public interface FlatSolver extends Solver {
+  /**
+   * Number of cells in a board.
+   */
+  static final int NUM_CELLS = 81;
+
+  /**
+   * Solve the board that starts at the given offset, overwriting it with the
+   * solution.
+   *
+   * @param cells The buffer holding the board.
+   * @param offset Index of the first cell of the board.
+   */
+  void solve(byte[] cells, int offset);
+
+  /**
+   * Solve a run of consecutive boards, overwriting each with its solution.
+   *
+   * @param cells The buffer holding the boards.
+   * @param offset Index of the first cell of the first board.
+   * @param count Number of boards to solve.
+   */
+  void solveAll(byte[] cells, int offset, int count);
+}
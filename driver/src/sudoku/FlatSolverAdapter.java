@@ -0,0 +1,60 @@
+package sudoku;
+
+/**
+ * Lets any solver be used as a <code>FlatSolver</code> by copying each board
+ * into a scratch array for it.  Like the solvers it wraps, an adapter must not
+ * be shared between threads.
+ */
+public final class FlatSolverAdapter implements FlatSolver
+{
+  private final Solver solver;
+  private final int[][] scratch = new int[9][9];
+
+  private FlatSolverAdapter(Solver solver)
+  {
+    this.solver = solver;
+  }
+
+  /**
+   * Get a flat view of a solver, which is the solver itself if it already
+   * supports flat buffers.
+   */
+  public static FlatSolver adapt(Solver solver)
+  {
+    if(solver instanceof FlatSolver) {
+      return (FlatSolver) solver;
+    }
+    return new FlatSolverAdapter(solver);
+  }
+
+  public void solve(int[][] board)
+  {
+    solver.solve(board);
+  }
+
+  public void solve(byte[] cells, int offset)
+  {
+    int index = offset;
+    for(int[] row : scratch) {
+      for(int j = 0; j < row.length; j++) {
+        row[j] = cells[index++];
+      }
+    }
+
+    solver.solve(scratch);
+
+    index = offset;
+    for(int[] row : scratch) {
+      for(int value : row) {
+        cells[index++] = (byte) value;
+      }
+    }
+  }
+
+  public void solveAll(byte[] cells, int offset, int count)
+  {
+    for(int i = 0; i < count; i++) {
+      solve(cells, offset + i * NUM_CELLS);
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package sudoku;
+
+/**
+ * Optional interface for a solver that keeps counters about the work it did.
+ * The driver adds the counters up across all of its solver instances and
+ * prints them at the end of a run.
+ */
+public interface Instrumented {
+  /**
+   * Names of the counters.  Empty if the solver isn't currently counting.
+   */
+  String[] getCounterNames();
+
+  /**
+   * Current value of every counter, in the same order as
+   * <code>getCounterNames</code>.
+   */
+  long[] getCounters();
+}
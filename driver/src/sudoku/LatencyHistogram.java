@@ -0,0 +1,131 @@
+package sudoku;
+
+/**
+ * Histogram of latencies in nanoseconds, bucketed the way HdrHistogram does
+ * it: every power of two range is split into the same number of linear
+ * sub-buckets, so every recorded value is accurate to within 1/64 (about
+ * 1.5%) of itself.  All storage is allocated up front, recording a sample
+ * doesn't allocate.
+ *
+ * Not thread safe, give each thread its own histogram and <code>add</code>
+ * them together afterwards.
+ */
+public final class LatencyHistogram
+{
+  /**
+   * Number of bits of precision within each power of two range.
+   */
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+  /**
+   * Enough buckets for every non-negative long.
+   */
+  private static final int NUM_BUCKETS = 64 - SUB_BUCKET_BITS + 1;
+
+  private final long[] counts = new long[(NUM_BUCKETS + 1) * SUB_BUCKET_HALF_COUNT];
+  private long count;
+  private long total;
+  private long min = Long.MAX_VALUE;
+  private long max;
+
+  /**
+   * Record a single latency.
+   */
+  public void record(long nanos)
+  {
+    if(nanos < 0) {
+      nanos = 0;
+    }
+
+    counts[indexOf(nanos)]++;
+    count++;
+    total += nanos;
+    if(nanos < min) {
+      min = nanos;
+    }
+    if(nanos > max) {
+      max = nanos;
+    }
+  }
+
+  /**
+   * Add all of the latencies recorded in another histogram to this one.
+   */
+  public void add(LatencyHistogram that)
+  {
+    for(int i = 0; i < counts.length; i++) {
+      counts[i] += that.counts[i];
+    }
+
+    count += that.count;
+    total += that.total;
+    min = Math.min(min, that.min);
+    max = Math.max(max, that.max);
+  }
+
+  public long getCount()
+  {
+    return count;
+  }
+
+  public long getMin()
+  {
+    return (count == 0) ? 0 : min;
+  }
+
+  public long getMax()
+  {
+    return max;
+  }
+
+  public double getMean()
+  {
+    return (count == 0) ? 0 : (double) total / count;
+  }
+
+  /**
+   * Determine the latency that the given percentage (0-100) of samples were
+   * at or below.  The result is the upper end of the bucket the percentile
+   * falls in, so it errs on the side of reporting a higher latency.
+   */
+  public long getValueAtPercentile(double percentile)
+  {
+    if(count == 0) {
+      return 0;
+    }
+
+    long target = (long) Math.ceil(Math.min(percentile, 100.) / 100. * count);
+    if(target < 1) {
+      target = 1;
+    }
+
+    long seen = 0;
+    for(int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if(seen >= target) {
+        return Math.min(highestValueAt(i), max);
+      }
+    }
+
+    return max;
+  }
+
+  private static int indexOf(long value)
+  {
+    int msb = 63 - Long.numberOfLeadingZeros(value | (SUB_BUCKET_COUNT - 1));
+    int bucket = msb - (SUB_BUCKET_BITS - 1);
+    int subBucket = (int) (value >>> bucket);
+
+    return bucket * SUB_BUCKET_HALF_COUNT + subBucket;
+  }
+
+  private static long highestValueAt(int index)
+  {
+    int bucket = (index < SUB_BUCKET_COUNT) ? 0 : (index >> (SUB_BUCKET_BITS - 1)) - 1;
+    long subBucket = index - bucket * SUB_BUCKET_HALF_COUNT;
+
+    return ((subBucket + 1) << bucket) - 1;
+  }
+}
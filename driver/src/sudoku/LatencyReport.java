@@ -0,0 +1,109 @@
+package sudoku;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Renders the per-board latencies of a run as text, CSV or JSON.
+ */
+public final class LatencyReport
+{
+  /**
+   * Percentiles included in every report.
+   */
+  private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+  private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p99.9" };
+
+  public enum Format
+  {
+    TEXT, CSV, JSON
+  }
+
+  private final LatencyHistogram histogram;
+  private final SlowestBoards slowest;
+
+  public LatencyReport(LatencyHistogram histogram, SlowestBoards slowest)
+  {
+    this.histogram = histogram;
+    this.slowest = slowest;
+  }
+
+  public void write(Format format, PrintStream out)
+  {
+    switch(format) {
+      case TEXT: writeText(out); break;
+      case CSV: writeCsv(out); break;
+      case JSON: writeJson(out); break;
+    }
+    out.flush();
+  }
+
+  private void writeText(PrintStream out)
+  {
+    out.printf("Latency over %1$d boards (ms):\n", histogram.getCount());
+    out.printf("  min:   %1$f\n", ms(histogram.getMin()));
+    out.printf("  mean:  %1$f\n", histogram.getMean() / (1000. * 1000.));
+    for(int i = 0; i < PERCENTILES.length; i++) {
+      out.printf("  %1$-6s %2$f\n", PERCENTILE_NAMES[i] + ":", ms(histogram.getValueAtPercentile(PERCENTILES[i])));
+    }
+    out.printf("  max:   %1$f\n", ms(histogram.getMax()));
+
+    int[] ids = slowest.getIds();
+    long[] nanos = slowest.getNanos();
+    out.printf("Slowest %1$d boards:\n", ids.length);
+    for(int i = 0; i < ids.length; i++) {
+      out.printf("  board %1$d: %2$f ms\n", ids[i], ms(nanos[i]));
+    }
+  }
+
+  /**
+   * One row per statistic, followed by one row per slow board.  All times
+   * are in nanoseconds.
+   */
+  private void writeCsv(PrintStream out)
+  {
+    out.println("metric,board,nanos");
+    out.printf("count,,%1$d\n", histogram.getCount());
+    out.printf("min,,%1$d\n", histogram.getMin());
+    out.printf(Locale.ROOT, "mean,,%1$.1f\n", histogram.getMean());
+    for(int i = 0; i < PERCENTILES.length; i++) {
+      out.printf("%1$s,,%2$d\n", PERCENTILE_NAMES[i], histogram.getValueAtPercentile(PERCENTILES[i]));
+    }
+    out.printf("max,,%1$d\n", histogram.getMax());
+
+    int[] ids = slowest.getIds();
+    long[] nanos = slowest.getNanos();
+    for(int i = 0; i < ids.length; i++) {
+      out.printf("slowest,%1$d,%2$d\n", ids[i], nanos[i]);
+    }
+  }
+
+  /**
+   * A single JSON object.  All times are in nanoseconds.
+   */
+  private void writeJson(PrintStream out)
+  {
+    out.println("{");
+    out.printf("  \"count\": %1$d,\n", histogram.getCount());
+    out.printf("  \"min\": %1$d,\n", histogram.getMin());
+    out.printf(Locale.ROOT, "  \"mean\": %1$.1f,\n", histogram.getMean());
+    for(int i = 0; i < PERCENTILES.length; i++) {
+      out.printf("  \"%1$s\": %2$d,\n", PERCENTILE_NAMES[i], histogram.getValueAtPercentile(PERCENTILES[i]));
+    }
+    out.printf("  \"max\": %1$d,\n", histogram.getMax());
+
+    int[] ids = slowest.getIds();
+    long[] nanos = slowest.getNanos();
+    out.println("  \"slowest\": [");
+    for(int i = 0; i < ids.length; i++) {
+      out.printf("    { \"board\": %1$d, \"nanos\": %2$d }%3$s\n", ids[i], nanos[i], (i + 1 < ids.length) ? "," : "");
+    }
+    out.println("  ]");
+    out.println("}");
+  }
+
+  private static double ms(long nanos)
+  {
+    return nanos / (1000. * 1000.);
+  }
+}
@@ -0,0 +1,164 @@
+package sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only, memory mapped view of a corpus of boards in the one board per
+ * line format that <code>Driver.parseBoard</code> reads.  Every line must be
+ * the same length, so board <code>i</code> lives at a fixed offset and can be
+ * decoded straight out of the mapping without reading any other part of the
+ * file.  The size of the boards is worked out from the length of the first
+ * line, 81 characters for 9 x 9 boards, 256 for 16 x 16 and so on.
+ *
+ * Decoding only reads from the mapping, so a corpus can be shared between
+ * threads.
+ */
+public final class MappedCorpus implements Corpus
+{
+  /**
+   * Number of cells (and so characters) in a 9 x 9 board.
+   */
+  public static final int NUM_CELLS = 81;
+
+  /**
+   * Longest line looked for when working out the size of the boards, that of
+   * a 30 x 30 board.
+   */
+  private static final int MAX_LINE = 30 * 30;
+
+  /**
+   * A single mapping can't exceed 2GB, so large files are split into
+   * segments that each hold a whole number of lines.
+   */
+  private final MappedByteBuffer[] segments;
+  private final int boardsPerSegment;
+
+  /**
+   * Distance in bytes between the start of consecutive boards.
+   */
+  private final int stride;
+  private final int size;
+
+  /**
+   * Number of rows (and columns) of a board, and the number of cells.
+   */
+  private final int n;
+  private final int numCells;
+
+  private MappedCorpus(MappedByteBuffer[] segments, int boardsPerSegment, int n, int stride, int size)
+  {
+    this.n = n;
+    this.numCells = n * n;
+    this.segments = segments;
+    this.boardsPerSegment = boardsPerSegment;
+    this.stride = stride;
+    this.size = size;
+  }
+
+  /**
+   * Map a corpus file.
+   */
+  public static MappedCorpus open(String filename) throws IOException
+  {
+    RandomAccessFile file = new RandomAccessFile(new File(filename), "r");
+    try {
+      FileChannel channel = file.getChannel();
+      long length = channel.size();
+      if(length == 0) {
+        return new MappedCorpus(new MappedByteBuffer[0], 1, 9, NUM_CELLS + 1, 0);
+      }
+
+      // Work out the size of the boards and the line terminator from the first line
+      MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, MAX_LINE + 2));
+      int numCells = 0;
+      while(numCells < head.limit() && head.get(numCells) != '\r' && head.get(numCells) != '\n') {
+        numCells++;
+      }
+
+      int n = Driver.getBoardSize(numCells);
+      if(n == 0) {
+        throw new IOException(filename + " does not start with a 9 x 9, 16 x 16 or 25 x 25 board");
+      }
+
+      int stride = numCells;
+      if(head.limit() > numCells && head.get(numCells) == '\r') {
+        stride += 2;
+      } else if(head.limit() > numCells && head.get(numCells) == '\n') {
+        stride += 1;
+      }
+
+      // The last line doesn't need a terminator
+      long count = (length + stride - numCells) / stride;
+      boolean terminated = (length == count * stride);
+      boolean unterminated = (length == (count - 1) * stride + numCells);
+      if(count > Integer.MAX_VALUE || !(terminated || unterminated)) {
+        throw new IOException(filename + " does not have fixed length lines of " + numCells + " cells");
+      }
+
+      int boardsPerSegment = Integer.MAX_VALUE / stride;
+      int numSegments = (int) ((count + boardsPerSegment - 1) / boardsPerSegment);
+      MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+      for(int i = 0; i < numSegments; i++) {
+        long start = (long) i * boardsPerSegment * stride;
+        long end = Math.min(length, start + (long) boardsPerSegment * stride);
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      }
+
+      // The mappings stay valid once the channel is closed
+      return new MappedCorpus(segments, boardsPerSegment, n, stride, (int) count);
+    } finally {
+      file.close();
+    }
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public int getBoardSize()
+  {
+    return n;
+  }
+
+  public void decode(int index, byte[] cells, int offset)
+  {
+    MappedByteBuffer segment = segmentOf(index);
+    int position = (index % boardsPerSegment) * stride;
+
+    for(int i = 0; i < numCells; i++) {
+      cells[offset + i] = (byte) decodeChar(segment.get(position + i), n);
+    }
+  }
+
+  public int[][] decode(int index, int[][] board)
+  {
+    MappedByteBuffer segment = segmentOf(index);
+    int position = (index % boardsPerSegment) * stride;
+
+    for(int i = 0; i < n; i++) {
+      int[] row = board[i];
+      for(int j = 0; j < n; j++) {
+        row[j] = decodeChar(segment.get(position++), n);
+      }
+    }
+    return board;
+  }
+
+  private MappedByteBuffer segmentOf(int index)
+  {
+    if(index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("board " + index + " of " + size);
+    }
+    return segments[index / boardsPerSegment];
+  }
+
+  private static int decodeChar(byte c, int n)
+  {
+    return Driver.parseChar((char) c, n);
+  }
+}
@@ -0,0 +1,352 @@
+package sudoku;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams boards from a reader through a set of solvers and on to an
+ * optional writer, using a fixed amount of memory no matter how many boards
+ * there are.
+ *
+ * A fixed ring of board slots is allocated up front.  The reader fills the
+ * next free slot and hands it to the solver threads, and the writer drains
+ * the slots in input order, so the output lines up with the input.  Once
+ * every slot is in flight the reader blocks until the writer frees the oldest
+ * one, which is what provides the back-pressure.
+ *
+ * Only 9 x 9 boards are supported, a line of any other length is an error.
+ */
+public final class Pipeline
+{
+  private static final int N = 9;
+  private static final int NUM_CELLS = N * N;
+
+  private final Solver[] solvers;
+  private final Slot[] slots;
+  private final Semaphore free;
+  private final BlockingQueue<Slot> work;
+
+  private final LatencyHistogram[] histograms;
+  private final SlowestBoards[] slowest;
+
+  private long numBoards;
+  private long numIncorrect;
+
+  /**
+   * @param solvers One solver per solving thread.
+   * @param window Maximum number of boards in flight at any time.
+   */
+  public Pipeline(Solver[] solvers, int window, int numSlowest)
+  {
+    this.solvers = solvers;
+
+    slots = new Slot[window];
+    for(int i = 0; i < slots.length; i++) {
+      slots[i] = new Slot();
+    }
+    free = new Semaphore(window);
+    work = new ArrayBlockingQueue<Slot>(window + solvers.length);
+
+    histograms = new LatencyHistogram[solvers.length];
+    slowest = new SlowestBoards[solvers.length];
+    for(int i = 0; i < solvers.length; i++) {
+      histograms[i] = new LatencyHistogram();
+      slowest[i] = new SlowestBoards(numSlowest);
+    }
+  }
+
+  /**
+   * Solve every board from the input.
+   *
+   * @param input Boards to solve, one per line.
+   * @param expected Expected solutions, one per line, or null to only check
+   *                 that each solution is valid and keeps the givens.
+   * @param output Where to write the solved boards, or null.
+   */
+  public void run(final BufferedReader input, final BufferedReader expected, final Writer output)
+      throws IOException, InterruptedException
+  {
+    final IOException[] writeError = new IOException[1];
+    Thread writer = new Thread(new Runnable() {
+      public void run()
+      {
+        try {
+          writeError[0] = drain(output);
+        } catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, "pipeline-writer");
+
+    Thread[] workers = new Thread[solvers.length];
+    for(int i = 0; i < workers.length; i++) {
+      final int worker = i;
+      workers[i] = new Thread(new Runnable() {
+        public void run()
+        {
+          try {
+            solve(worker);
+          } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }, "pipeline-solver-" + i);
+    }
+
+    writer.start();
+    for(Thread worker : workers) {
+      worker.start();
+    }
+
+    try {
+      fill(input, expected);
+    } finally {
+      // Tell every solver thread that there's nothing left
+      for(int i = 0; i < workers.length; i++) {
+        work.put(Slot.POISON);
+      }
+    }
+
+    for(Thread worker : workers) {
+      worker.join();
+    }
+    writer.join();
+
+    if(writeError[0] != null) {
+      throw writeError[0];
+    }
+  }
+
+  /**
+   * Number of boards that went through the pipeline.
+   */
+  public long getNumBoards()
+  {
+    return numBoards;
+  }
+
+  /**
+   * Number of boards whose solution was wrong.
+   */
+  public long getNumIncorrect()
+  {
+    return numIncorrect;
+  }
+
+  /**
+   * Latencies of every board, across all solver threads.
+   */
+  public LatencyHistogram getHistogram()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for(LatencyHistogram h : histograms) {
+      histogram.add(h);
+    }
+    return histogram;
+  }
+
+  /**
+   * Slowest boards, across all solver threads.
+   */
+  public SlowestBoards getSlowest(int numSlowest)
+  {
+    SlowestBoards result = new SlowestBoards(numSlowest);
+    for(SlowestBoards s : slowest) {
+      result.add(s);
+    }
+    return result;
+  }
+
+  /**
+   * Read boards into free slots and hand them to the solvers.
+   */
+  private void fill(BufferedReader input, BufferedReader expected) throws IOException, InterruptedException
+  {
+    long seq = 0;
+
+    // Slot taken from the ring but not yet handed to the solvers
+    Slot pending = null;
+
+    try {
+      String line;
+      while((line = input.readLine()) != null) {
+        if(line.length() == 0) {
+          continue;
+        }
+
+        free.acquire();
+        Slot slot = slots[(int) (seq % slots.length)];
+        pending = slot;
+        slot.id = seq++;
+
+        checkLength(line, slot.id, "board");
+        Driver.parseBoard(line, slot.puzzle);
+        for(int i = 0; i < slot.puzzle.length; i++) {
+          System.arraycopy(slot.puzzle[i], 0, slot.board[i], 0, slot.puzzle[i].length);
+        }
+
+        slot.hasExpected = false;
+        if(expected != null) {
+          String solution = expected.readLine();
+          if(solution == null) {
+            throw new IOException("fewer solutions than boards, missing solution for board " + slot.id);
+          }
+
+          checkLength(solution, slot.id, "solution");
+          Driver.parseBoard(solution, slot.expected);
+          slot.hasExpected = true;
+        }
+
+        work.put(slot);
+        pending = null;
+      }
+    } finally {
+      // Mark the end of the stream for the writer.  If reading failed part
+      // way through a board its slot is the end, since the writer is already
+      // waiting on it.
+      if(pending == null) {
+        free.acquire();
+        pending = slots[(int) (seq % slots.length)];
+      }
+      pending.end = true;
+      pending.markSolved();
+    }
+  }
+
+  private static void checkLength(String line, long id, String what) throws IOException
+  {
+    if(line.length() != NUM_CELLS) {
+      throw new IOException("line for " + what + " " + id + " has " + line.length()
+          + " characters, streaming only supports 9 x 9 boards of " + NUM_CELLS);
+    }
+  }
+
+  /**
+   * Solve slots until the poison slot shows up.
+   */
+  private void solve(int worker) throws InterruptedException
+  {
+    Solver solver = solvers[worker];
+    LatencyHistogram histogram = histograms[worker];
+    SlowestBoards slow = slowest[worker];
+
+    while(true) {
+      Slot slot = work.take();
+      if(slot == Slot.POISON) {
+        return;
+      }
+
+      try {
+        long start = System.nanoTime();
+        solver.solve(slot.board);
+        long latency = System.nanoTime() - start;
+
+        histogram.record(latency);
+        slow.record((int) slot.id, latency);
+
+        slot.correct = slot.hasExpected
+            ? Driver.checkSolution(slot.board, slot.expected)
+            : Driver.isValidSolution(slot.puzzle, slot.board);
+      } catch(Throwable e) {
+        // Don't let one bad board stall the writer, or kill this thread and
+        // leave nobody to take the rest of the work
+        System.err.printf("Solver failed on board %1$d: %2$s\n", slot.id, e);
+        slot.correct = false;
+      } finally {
+        slot.markSolved();
+      }
+    }
+  }
+
+  /**
+   * Write out solved slots in input order and release them back to the
+   * reader.  A write error stops the writing but not the draining, so the
+   * reader never waits on a slot that won't be released.  Returns the first
+   * write error, or null.
+   */
+  private IOException drain(Writer output) throws InterruptedException
+  {
+    StringBuilder sb = new StringBuilder();
+    IOException error = null;
+
+    for(long seq = 0; ; seq++) {
+      Slot slot = slots[(int) (seq % slots.length)];
+      slot.awaitSolved();
+
+      if(slot.end) {
+        slot.reset();
+        free.release();
+        break;
+      }
+
+      numBoards++;
+      if(!slot.correct) {
+        numIncorrect++;
+      }
+
+      if(output != null && error == null) {
+        sb.setLength(0);
+        Driver.formatBoard(slot.board, sb);
+        sb.append('\n');
+        try {
+          output.append(sb);
+        } catch(IOException e) {
+          error = e;
+        }
+      }
+
+      slot.reset();
+      free.release();
+    }
+
+    if(output != null && error == null) {
+      try {
+        output.flush();
+      } catch(IOException e) {
+        error = e;
+      }
+    }
+    return error;
+  }
+
+  /**
+   * A board travelling through the pipeline.
+   */
+  private static final class Slot
+  {
+    static final Slot POISON = new Slot();
+
+    final int[][] puzzle = new int[N][N];
+    final int[][] board = new int[N][N];
+    final int[][] expected = new int[N][N];
+
+    long id;
+    boolean hasExpected;
+    boolean correct;
+    boolean end;
+    private boolean solved;
+
+    synchronized void markSolved()
+    {
+      solved = true;
+      notifyAll();
+    }
+
+    synchronized void awaitSolved() throws InterruptedException
+    {
+      while(!solved) {
+        wait();
+      }
+    }
+
+    synchronized void reset()
+    {
+      solved = false;
+      end = false;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package sudoku;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps track of the N boards that took the longest to solve.  The boards
+ * are kept in a fixed size min-heap keyed on latency, so recording a board
+ * doesn't allocate.
+ *
+ * Not thread safe, give each thread its own instance and <code>add</code>
+ * them together afterwards.
+ */
+public final class SlowestBoards
+{
+  private final long[] nanos;
+  private final int[] ids;
+  private int size;
+
+  public SlowestBoards(int capacity)
+  {
+    nanos = new long[capacity];
+    ids = new int[capacity];
+  }
+
+  /**
+   * Record how long the given board took to solve.
+   */
+  public void record(int id, long latency)
+  {
+    if(size < nanos.length) {
+      nanos[size] = latency;
+      ids[size] = id;
+      siftUp(size++);
+    } else if(size > 0 && latency > nanos[0]) {
+      nanos[0] = latency;
+      ids[0] = id;
+      siftDown(0);
+    }
+  }
+
+  /**
+   * Add all of the boards recorded in another instance to this one.
+   */
+  public void add(SlowestBoards that)
+  {
+    for(int i = 0; i < that.size; i++) {
+      record(that.ids[i], that.nanos[i]);
+    }
+  }
+
+  /**
+   * Number of boards recorded, at most the capacity.
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Ids of the recorded boards, slowest first.
+   */
+  public int[] getIds()
+  {
+    int[] order = sortedOrder();
+    int[] result = new int[size];
+    for(int i = 0; i < size; i++) {
+      result[i] = ids[order[i]];
+    }
+    return result;
+  }
+
+  /**
+   * Latencies of the recorded boards, slowest first.
+   */
+  public long[] getNanos()
+  {
+    int[] order = sortedOrder();
+    long[] result = new long[size];
+    for(int i = 0; i < size; i++) {
+      result[i] = nanos[order[i]];
+    }
+    return result;
+  }
+
+  /**
+   * Heap positions sorted by decreasing latency.  Only used when reporting.
+   */
+  private int[] sortedOrder()
+  {
+    Integer[] order = new Integer[size];
+    for(int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b)
+      {
+        return (nanos[b] < nanos[a]) ? -1 : (nanos[b] == nanos[a] ? 0 : 1);
+      }
+    });
+
+    int[] result = new int[size];
+    for(int i = 0; i < size; i++) {
+      result[i] = order[i];
+    }
+    return result;
+  }
+
+  private void siftUp(int i)
+  {
+    while(i > 0) {
+      int parent = (i - 1) / 2;
+      if(nanos[parent] <= nanos[i]) {
+        break;
+      }
+
+      swap(i, parent);
+      i = parent;
+    }
+  }
+
+  private void siftDown(int i)
+  {
+    while(true) {
+      int smallest = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+
+      if(left < size && nanos[left] < nanos[smallest]) {
+        smallest = left;
+      }
+      if(right < size && nanos[right] < nanos[smallest]) {
+        smallest = right;
+      }
+      if(smallest == i) {
+        break;
+      }
+
+      swap(i, smallest);
+      i = smallest;
+    }
+  }
+
+  private void swap(int i, int j)
+  {
+    long n = nanos[i];
+    nanos[i] = nanos[j];
+    nanos[j] = n;
+
+    int id = ids[i];
+    ids[i] = ids[j];
+    ids[j] = id;
+  }
+}
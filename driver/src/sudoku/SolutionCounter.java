@@ -0,0 +1,21 @@
+package sudoku;
+
+/**
+ * Optional interface for a solver that can count the solutions of a board
+ * instead of just finding one.  Counting up to 2 is enough to tell whether a
+ * board has a unique solution.
+ */
+public interface SolutionCounter extends Solver {
+  /**
+   * Count the solutions of a board, stopping as soon as the limit is reached.
+   * The board is left unchanged.
+   *
+   * @param board The board to count the solutions of, indexed by row then
+   *              column with <code>Solver.MISSING</code> for a missing cell.
+   * @param limit Most solutions to look for, at least 1.
+   * @return The number of solutions, or the limit if there are at least that
+   *         many.  0 if the board has no solution, including when its givens
+   *         contradict each other.
+   */
+  int countSolutions(int[][] board, int limit);
+}
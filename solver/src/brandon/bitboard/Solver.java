@@ -0,0 +1,418 @@
+package brandon.bitboard;
+
+import brandon.inference.CellSet;
+import brandon.inference.Cells;
+
+/**
+ * Solver that keeps one 81 bit board per value instead of a set of
+ * possibilities per cell.  Bit <code>id</code> of value <code>v</code>'s
+ * board is set while <code>v</code> is still possible in cell
+ * <code>id</code>.  Each board is two longs (cells 0-63 and 64-80).
+ *
+ * Constraints are applied to whole boards at a time:
+ * <ul>
+ *   <li>placing a value clears the cell from every other value's board, and
+ *       clears the cell's neighbors from the value's board using the
+ *       precomputed neighbor masks from <code>Cells</code>;</li>
+ *   <li>naked singles and empty cells are found for all 81 cells at once by
+ *       adding the nine boards up bit-sliced;</li>
+ *   <li>hidden singles are found from the popcount of each value's board
+ *       masked to each group.</li>
+ * </ul>
+ *
+ * Search saves the boards on a preallocated stack before each guess, so a
+ * solve never allocates.
+ */
+public final class Solver implements sudoku.FlatSolver
+{
+  private static final int N = Cells.N;
+  private static final int LO_BITS = 64;
+
+  private static final long ALL_LO = -1L;
+  private static final long ALL_HI = (1L << (Cells.NUM_CELLS - LO_BITS)) - 1;
+
+  /**
+   * Neighbor masks of every cell.
+   */
+  private static final long[] NEIGHBORS_LO = new long[Cells.NUM_CELLS];
+  private static final long[] NEIGHBORS_HI = new long[Cells.NUM_CELLS];
+
+  /**
+   * Member masks of every group.
+   */
+  private static final long[] GROUP_LO = new long[Cells.NUM_GROUPS];
+  private static final long[] GROUP_HI = new long[Cells.NUM_GROUPS];
+
+  static {
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      CellSet neighbors = Cells.getNeighborCells(id);
+      NEIGHBORS_LO[id] = neighbors.getLow();
+      NEIGHBORS_HI[id] = neighbors.getHigh();
+    }
+
+    for(int groupid = 0; groupid < Cells.NUM_GROUPS; groupid++) {
+      CellSet members = new CellSet();
+      for(int id : Cells.getGroupMembers(groupid)) {
+        members.add(id);
+      }
+      GROUP_LO[groupid] = members.getLow();
+      GROUP_HI[groupid] = members.getHigh();
+    }
+  }
+
+  /**
+   * Layout of a saved state: the low and high word of each value's board
+   * (values 1-N at index 2*(v-1)), followed by the words of the solved mask.
+   */
+  private static final int SOLVED = 2 * N;
+  private static final int STATE_SIZE = SOLVED + 2;
+
+  private final long[] lo = new long[N + 1];
+  private final long[] hi = new long[N + 1];
+  private long solvedLo;
+  private long solvedHi;
+
+  /**
+   * Saved states, one per level of search.
+   */
+  private final long[] stack = new long[(Cells.NUM_CELLS + 1) * STATE_SIZE];
+
+  public final void solve(int[][] array)
+  {
+    reset();
+
+    for(int i = 0; i < N; i++) {
+      for(int j = 0; j < N; j++) {
+        int value = array[i][j];
+        if(value != MISSING && !place(i * N + j, value)) {
+          return;
+        }
+      }
+    }
+
+    if(!search(0)) {
+      return;
+    }
+
+    toArray(array);
+  }
+
+  /**
+   * Place the givens of a board and its singles without searching, as a
+   * cheap first look at how much of it is left to solve.  Returns the number
+   * of candidates left over, the sum over the unsolved cells of their
+   * possibilities less one, which is 0 if singles solve the board.  Returns
+   * -1 if the board has no solution.  The solver keeps the state for
+   * <code>complete</code>.
+   */
+  public final int propagate(int[][] array)
+  {
+    reset();
+
+    for(int i = 0; i < N; i++) {
+      for(int j = 0; j < N; j++) {
+        int value = array[i][j];
+        if(value != MISSING && !place(i * N + j, value)) {
+          return -1;
+        }
+      }
+    }
+
+    if(!propagate()) {
+      return -1;
+    }
+
+    int left = Long.bitCount(solvedLo) + Long.bitCount(solvedHi) - Cells.NUM_CELLS;
+    for(int value = 1; value <= N; value++) {
+      left += Long.bitCount(lo[value] & ~solvedLo) + Long.bitCount(hi[value] & ~solvedHi);
+    }
+    return left;
+  }
+
+  /**
+   * Finish solving the board of the last call to <code>propagate</code>, which
+   * must have found it consistent, and copy the solution into an array.
+   * Returns false if the board has no solution.
+   */
+  public final boolean complete(int[][] array)
+  {
+    if(!branch(0)) {
+      return false;
+    }
+
+    toArray(array);
+    return true;
+  }
+
+  public final void solve(byte[] cells, int offset)
+  {
+    reset();
+
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      int value = cells[offset + id];
+      if(value != MISSING && !place(id, value)) {
+        return;
+      }
+    }
+
+    if(!search(0)) {
+      return;
+    }
+
+    for(int value = 1; value <= N; value++) {
+      for(long word = lo[value]; word != 0; word &= word - 1) {
+        cells[offset + Long.numberOfTrailingZeros(word)] = (byte) value;
+      }
+      for(long word = hi[value]; word != 0; word &= word - 1) {
+        cells[offset + LO_BITS + Long.numberOfTrailingZeros(word)] = (byte) value;
+      }
+    }
+  }
+
+  public final void solveAll(byte[] cells, int offset, int count)
+  {
+    for(int i = 0; i < count; i++) {
+      solve(cells, offset + i * Cells.NUM_CELLS);
+    }
+  }
+
+  private void toArray(int[][] array)
+  {
+    for(int value = 1; value <= N; value++) {
+      for(long word = lo[value]; word != 0; word &= word - 1) {
+        int id = Long.numberOfTrailingZeros(word);
+        array[id / N][id % N] = value;
+      }
+      for(long word = hi[value]; word != 0; word &= word - 1) {
+        int id = LO_BITS + Long.numberOfTrailingZeros(word);
+        array[id / N][id % N] = value;
+      }
+    }
+  }
+
+  private void reset()
+  {
+    for(int value = 1; value <= N; value++) {
+      lo[value] = ALL_LO;
+      hi[value] = ALL_HI;
+    }
+    solvedLo = 0;
+    solvedHi = 0;
+  }
+
+  /**
+   * Place a value in a cell.  Returns false if the value isn't possible there.
+   */
+  private boolean place(int id, int value)
+  {
+    long bitLo = (id < LO_BITS) ? (1L << id) : 0;
+    long bitHi = (id < LO_BITS) ? 0 : (1L << (id - LO_BITS));
+
+    if((lo[value] & bitLo) == 0 && (hi[value] & bitHi) == 0) {
+      return false;
+    }
+
+    for(int other = 1; other <= N; other++) {
+      lo[other] &= ~bitLo;
+      hi[other] &= ~bitHi;
+    }
+    lo[value] = (lo[value] & ~NEIGHBORS_LO[id]) | bitLo;
+    hi[value] = (hi[value] & ~NEIGHBORS_HI[id]) | bitHi;
+
+    solvedLo |= bitLo;
+    solvedHi |= bitHi;
+    return true;
+  }
+
+  /**
+   * Place naked and hidden singles until there are none left.  Returns false
+   * on a contradiction.
+   */
+  private boolean propagate()
+  {
+    boolean changed = true;
+    while(changed) {
+      changed = false;
+
+      // Bit-sliced count of the possibilities of every cell: at least one, and at least two
+      long onesLo = 0, onesHi = 0, twosLo = 0, twosHi = 0;
+      for(int value = 1; value <= N; value++) {
+        twosLo |= onesLo & lo[value];
+        twosHi |= onesHi & hi[value];
+        onesLo |= lo[value];
+        onesHi |= hi[value];
+      }
+
+      // A cell with no possibilities left
+      if((ALL_LO & ~onesLo) != 0 || (ALL_HI & ~onesHi) != 0) {
+        return false;
+      }
+
+      // Naked singles
+      long singlesLo = onesLo & ~twosLo & ~solvedLo;
+      long singlesHi = onesHi & ~twosHi & ~solvedHi;
+      for(; singlesLo != 0; singlesLo &= singlesLo - 1) {
+        if(!placeSingle(Long.numberOfTrailingZeros(singlesLo))) {
+          return false;
+        }
+        changed = true;
+      }
+      for(; singlesHi != 0; singlesHi &= singlesHi - 1) {
+        if(!placeSingle(LO_BITS + Long.numberOfTrailingZeros(singlesHi))) {
+          return false;
+        }
+        changed = true;
+      }
+      if(changed) {
+        continue;
+      }
+
+      // Hidden singles
+      for(int value = 1; value <= N; value++) {
+        for(int groupid = 0; groupid < Cells.NUM_GROUPS; groupid++) {
+          long maskLo = lo[value] & GROUP_LO[groupid];
+          long maskHi = hi[value] & GROUP_HI[groupid];
+
+          int count = Long.bitCount(maskLo) + Long.bitCount(maskHi);
+          if(count == 0) {
+            return false;
+          }
+
+          if(count == 1 && (maskLo & solvedLo) == 0 && (maskHi & solvedHi) == 0) {
+            int id = (maskLo != 0) ? Long.numberOfTrailingZeros(maskLo) : LO_BITS + Long.numberOfTrailingZeros(maskHi);
+            if(!place(id, value)) {
+              return false;
+            }
+            changed = true;
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Place the only remaining value of a cell.  The cell may have lost that
+   * value to an earlier single in the same pass.
+   */
+  private boolean placeSingle(int id)
+  {
+    for(int value = 1; value <= N; value++) {
+      if(isPossible(id, value)) {
+        return place(id, value);
+      }
+    }
+    return false;
+  }
+
+  private boolean isPossible(int id, int value)
+  {
+    if(id < LO_BITS) {
+      return (lo[value] & (1L << id)) != 0;
+    }
+    return (hi[value] & (1L << (id - LO_BITS))) != 0;
+  }
+
+  private boolean search(int depth)
+  {
+    return propagate() && branch(depth);
+  }
+
+  /**
+   * Search on from a board that singles are stuck on.
+   */
+  private boolean branch(int depth)
+  {
+    if(solvedLo == ALL_LO && solvedHi == ALL_HI) {
+      return true;
+    }
+
+    int id = getCellToSearch();
+    int base = depth * STATE_SIZE;
+    save(base);
+
+    for(int value = 1; value <= N; value++) {
+      if(!isPossible(id, value)) {
+        continue;
+      }
+
+      if(place(id, value) && search(depth + 1)) {
+        return true;
+      }
+      restore(base);
+    }
+
+    // Nothing worked, backtrack
+    return false;
+  }
+
+  /**
+   * Pick the unsolved cell with the fewest possibilities, preferring any
+   * cell with exactly two (found for all cells at once, bit-sliced).
+   */
+  private int getCellToSearch()
+  {
+    long onesLo = 0, onesHi = 0, twosLo = 0, twosHi = 0, threesLo = 0, threesHi = 0;
+    for(int value = 1; value <= N; value++) {
+      threesLo |= twosLo & lo[value];
+      threesHi |= twosHi & hi[value];
+      twosLo |= onesLo & lo[value];
+      twosHi |= onesHi & hi[value];
+      onesLo |= lo[value];
+      onesHi |= hi[value];
+    }
+
+    long pairsLo = twosLo & ~threesLo & ~solvedLo;
+    long pairsHi = twosHi & ~threesHi & ~solvedHi;
+    if(pairsLo != 0) {
+      return Long.numberOfTrailingZeros(pairsLo);
+    }
+    if(pairsHi != 0) {
+      return LO_BITS + Long.numberOfTrailingZeros(pairsHi);
+    }
+
+    int bestCount = Integer.MAX_VALUE;
+    int bestId = -1;
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      boolean solved = (id < LO_BITS) ? (solvedLo & (1L << id)) != 0 : (solvedHi & (1L << (id - LO_BITS))) != 0;
+      if(solved) {
+        continue;
+      }
+
+      int count = 0;
+      for(int value = 1; value <= N; value++) {
+        if(isPossible(id, value)) {
+          count++;
+        }
+      }
+
+      if(count < bestCount) {
+        bestCount = count;
+        bestId = id;
+      }
+    }
+
+    return bestId;
+  }
+
+  private void save(int base)
+  {
+    for(int value = 1; value <= N; value++) {
+      stack[base + 2 * (value - 1)] = lo[value];
+      stack[base + 2 * (value - 1) + 1] = hi[value];
+    }
+    stack[base + SOLVED] = solvedLo;
+    stack[base + SOLVED + 1] = solvedHi;
+  }
+
+  private void restore(int base)
+  {
+    for(int value = 1; value <= N; value++) {
+      lo[value] = stack[base + 2 * (value - 1)];
+      hi[value] = stack[base + 2 * (value - 1) + 1];
+    }
+    solvedLo = stack[base + SOLVED];
+    solvedHi = stack[base + SOLVED + 1];
+  }
+}
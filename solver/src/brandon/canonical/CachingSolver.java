@@ -0,0 +1,185 @@
+package brandon.canonical;
+
+/**
+ * Solver that remembers the solutions of the boards it has seen, and hands
+ * them out again for boards that are the same or the same up to the
+ * transforms of <code>Canonicalizer</code>.  Boards it hasn't seen are solved
+ * by another solver.
+ *
+ * The other solver is chosen with
+ * <code>-Dbrandon.canonical.solver=class</code> (by default
+ * <code>brandon.inference.Solver</code>), and the size of the cache with
+ * <code>-Dbrandon.canonical.capacity=count</code>.  The size counts entries,
+ * not boards: a board that has to be solved takes two, one for its canonical
+ * form and one for the board as given, and a board found by its canonical
+ * form takes one more for itself.  Every instance made by the driver shares
+ * one cache, so a board solved on one thread is a hit on every other.
+ *
+ * Only 9 x 9 boards are cached, others go straight to the other solver.
+ */
+public final class CachingSolver implements sudoku.Solver, sudoku.Instrumented
+{
+  /**
+   * System property with the class name of the solver to solve misses with.
+   */
+  public static final String SOLVER_PROPERTY = "brandon.canonical.solver";
+
+  /**
+   * System property with the most cache entries (not boards) to keep.
+   */
+  public static final String CAPACITY_PROPERTY = "brandon.canonical.capacity";
+
+  private static final SolutionCache SHARED_CACHE =
+      new SolutionCache(Integer.getInteger(CAPACITY_PROPERTY, 100000));
+
+  private static final String[] NAMES = {
+      "cache exact hits",
+      "cache canonical hits",
+      "cache misses",
+      "cache bypasses",
+  };
+
+  private final sudoku.Solver delegate;
+  private final SolutionCache cache;
+  private final Canonicalizer canonicalizer = new Canonicalizer();
+
+  private long exactHits;
+  private long canonicalHits;
+  private long misses;
+  private long bypasses;
+
+  // Scratch space for the board as given, its canonical form and a solution of either.
+  private final byte[] puzzle = new byte[Canonicalizer.NUM_CELLS];
+  private final byte[] form = new byte[Canonicalizer.NUM_CELLS];
+  private final byte[] solution = new byte[Canonicalizer.NUM_CELLS];
+
+  public CachingSolver()
+  {
+    this(newDelegate(System.getProperty(SOLVER_PROPERTY, "brandon.inference.Solver")), SHARED_CACHE);
+  }
+
+  /**
+   * Wrap a solver with a cache of its own, of at most <code>capacity</code>
+   * entries.
+   */
+  public CachingSolver(sudoku.Solver delegate, int capacity)
+  {
+    this(delegate, new SolutionCache(capacity));
+  }
+
+  private CachingSolver(sudoku.Solver delegate, SolutionCache cache)
+  {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  private static sudoku.Solver newDelegate(String className)
+  {
+    try {
+      return Class.forName(className).asSubclass(sudoku.Solver.class).getDeclaredConstructor().newInstance();
+    } catch(Exception e) {
+      throw new IllegalArgumentException("Unable to instantiate solver: " + className, e);
+    }
+  }
+
+  public final void solve(int[][] board)
+  {
+    if(board.length != Canonicalizer.N) {
+      bypasses++;
+      delegate.solve(board);
+      return;
+    }
+
+    toFlat(board, puzzle);
+    if(cache.get(puzzle, solution)) {
+      exactHits++;
+      toArray(solution, board);
+      return;
+    }
+
+    if(!canonicalizer.canonicalize(board, form)) {
+      // Too symmetric to canonicalise, only remember the board as it is
+      bypasses++;
+      delegate.solve(board);
+      if(toFlat(board, solution)) {
+        cache.put(puzzle, solution);
+      }
+      return;
+    }
+
+    if(cache.get(form, solution)) {
+      canonicalHits++;
+      canonicalizer.toOriginal(solution, board);
+    } else {
+      misses++;
+      delegate.solve(board);
+
+      // Don't remember boards the solver couldn't solve
+      if(!toFlat(board, solution)) {
+        return;
+      }
+      canonicalizer.toCanonical(board, solution);
+      cache.put(form, solution);
+    }
+
+    // Remember the board as it is too, so that repeats skip canonicalising
+    toFlat(board, solution);
+    cache.put(puzzle, solution);
+  }
+
+  public final String[] getCounterNames()
+  {
+    String[] names = NAMES;
+    if(delegate instanceof sudoku.Instrumented) {
+      names = concat(names, ((sudoku.Instrumented) delegate).getCounterNames());
+    }
+    return names.clone();
+  }
+
+  public final long[] getCounters()
+  {
+    long[] counters = {exactHits, canonicalHits, misses, bypasses};
+    if(delegate instanceof sudoku.Instrumented) {
+      long[] others = ((sudoku.Instrumented) delegate).getCounters();
+      long[] all = new long[counters.length + others.length];
+      System.arraycopy(counters, 0, all, 0, counters.length);
+      System.arraycopy(others, 0, all, counters.length, others.length);
+      counters = all;
+    }
+    return counters;
+  }
+
+  private static String[] concat(String[] a, String[] b)
+  {
+    String[] result = new String[a.length + b.length];
+    System.arraycopy(a, 0, result, 0, a.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+
+  /**
+   * Copy a board into one byte per cell.  Returns false if any cell is
+   * missing.
+   */
+  private static boolean toFlat(int[][] board, byte[] cells)
+  {
+    boolean complete = true;
+    for(int i = 0; i < Canonicalizer.N; i++) {
+      for(int j = 0; j < Canonicalizer.N; j++) {
+        int value = board[i][j];
+        cells[i * Canonicalizer.N + j] = (byte) value;
+        complete &= (value != sudoku.Solver.MISSING);
+      }
+    }
+    return complete;
+  }
+
+  private static void toArray(byte[] cells, int[][] board)
+  {
+    for(int i = 0; i < Canonicalizer.N; i++) {
+      for(int j = 0; j < Canonicalizer.N; j++) {
+        board[i][j] = cells[i * Canonicalizer.N + j];
+      }
+    }
+  }
+}
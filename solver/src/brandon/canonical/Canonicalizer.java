@@ -0,0 +1,422 @@
+package brandon.canonical;
+
+import java.util.Arrays;
+
+/**
+ * Maps a 9 x 9 board to a canonical representative of every board that is
+ * the same up to transposition, permutation of the bands and of the rows
+ * within a band, permutation of the stacks and of the columns within a stack,
+ * and relabelling of the digits.  Two boards have the same canonical form
+ * exactly when one can be turned into the other by those transforms, so a
+ * solution of the canonical form serves all of them.
+ *
+ * The canonical form is the lexicographically smallest transformed board,
+ * reading cells row by row with empty cells last and digits relabelled in
+ * the order they first appear.  Rather than trying all 3,359,232 transforms
+ * the first row is minimised on its own, which leaves only the transforms
+ * that tie on it to complete row by row.  Putting empty cells last favours
+ * first rows full of givens, which few transforms tie on.  Boards so sparse
+ * or symmetric that too many transforms tie are given up on.
+ *
+ * Holds the transform of the last board canonicalised and scratch space, so
+ * an instance must not be shared between threads.
+ */
+public final class Canonicalizer
+{
+  public static final int N = 9;
+  public static final int NUM_CELLS = N * N;
+
+  private static final int BOX = 3;
+
+  /**
+   * Value of an empty cell, bigger than any label.
+   */
+  private static final int EMPTY = N + 1;
+
+  /**
+   * Bit mask of the rows of the first band.
+   */
+  private static final int BAND_MASK = (1 << BOX) - 1;
+
+  /**
+   * Most transforms allowed to tie on the first row before giving up.
+   */
+  private static final int MAX_CANDIDATES = 2048;
+
+  /**
+   * The six orders of three things.
+   */
+  private static final int[][] PERMUTATIONS = {
+      {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0},
+  };
+
+  /**
+   * Every order of the columns that keeps stacks together, 6 orders of the
+   * stacks times 6 orders within each stack.  Doubles as the orders of the
+   * rows that keep bands together.
+   */
+  private static final int[][] LINE_ORDERS = new int[6 * 6 * 6 * 6][N];
+  static {
+    int index = 0;
+    for(int[] stacks : PERMUTATIONS) {
+      for(int[] first : PERMUTATIONS) {
+        for(int[] second : PERMUTATIONS) {
+          for(int[] third : PERMUTATIONS) {
+            int[][] within = {first, second, third};
+            for(int i = 0; i < N; i++) {
+              LINE_ORDERS[index][i] = BOX * stacks[i / BOX] + within[i / BOX][i % BOX];
+            }
+            index++;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The board as given, and transposed.  Empty cells are <code>EMPTY</code>.
+   */
+  private final int[][] sources = new int[2][NUM_CELLS];
+
+  // Transforms that tie on the first row: which source, which row of it goes first and the order of
+  // the columns (an index into LINE_ORDERS).
+  private final int[] candidate_sources = new int[MAX_CANDIDATES];
+  private final int[] candidate_rows = new int[MAX_CANDIDATES];
+  private final int[] candidate_columns = new int[MAX_CANDIDATES];
+  private int candidate_count;
+  private final int[] stack_counts = new int[BOX];
+
+  // The smallest board found so far and the transform that gives it.
+  private final int[] best = new int[NUM_CELLS];
+  private final int[] best_rows = new int[N];
+  private int[] best_columns;
+  private int best_source;
+  private final int[] best_labels = new int[N + 1];
+  private final int[] best_values = new int[N + 1];
+
+  // Scratch space for trying a transform: the board it gives, which source it transforms, the orders
+  // of the rows and columns, and the labels given to digits by the rows above each depth.
+  private final int[] trial = new int[NUM_CELLS];
+  private int trial_source;
+  private final int[] trial_rows = new int[N];
+  private int[] trial_columns;
+  private final int[][] depth_labels = new int[N + 1][N + 1];
+  private final int[] depth_next = new int[N + 1];
+
+  /**
+   * Put the canonical form of a board into <code>form</code>, one byte per
+   * cell row by row with <code>sudoku.Solver.MISSING</code> for an empty cell,
+   * and remember the transform so that boards can be mapped between the two.
+   * Returns false if the board ties with itself under too many transforms to
+   * canonicalise cheaply, in which case nothing is remembered.
+   */
+  public boolean canonicalize(int[][] board, byte[] form)
+  {
+    assert board.length == N;
+
+    for(int i = 0; i < N; i++) {
+      for(int j = 0; j < N; j++) {
+        int value = (board[i][j] == sudoku.Solver.MISSING) ? EMPTY : board[i][j];
+        sources[0][i * N + j] = value;
+        sources[1][j * N + i] = value;
+      }
+    }
+
+    if(!findFirstRows()) {
+      return false;
+    }
+
+    // Every completion beats rows of values bigger than an empty cell
+    Arrays.fill(best, N, NUM_CELLS, EMPTY + 1);
+    for(int c = 0; c < candidate_count; c++) {
+      trial_source = candidate_sources[c];
+      trial_columns = LINE_ORDERS[candidate_columns[c]];
+      trial_rows[0] = candidate_rows[c];
+
+      Arrays.fill(depth_labels[0], 0);
+      depth_next[0] = 1;
+      relabelRow(0);
+      completeRows(1, 1 << candidate_rows[c], false);
+    }
+
+    // Digits that aren't on the board get the labels that are left, in order
+    int next = 1;
+    for(int value = 1; value <= N; value++) {
+      if(best_labels[value] != 0) {
+        next++;
+      }
+    }
+    for(int value = 1; value <= N; value++) {
+      if(best_labels[value] == 0) {
+        best_labels[value] = next++;
+      }
+      best_values[best_labels[value]] = value;
+    }
+
+    for(int id = 0; id < NUM_CELLS; id++) {
+      form[id] = (byte) ((best[id] == EMPTY) ? sudoku.Solver.MISSING : best[id]);
+    }
+    return true;
+  }
+
+  /**
+   * Map a board into the canonical form of the last board canonicalised,
+   * typically its solution.
+   */
+  public void toCanonical(int[][] board, byte[] form)
+  {
+    for(int i = 0; i < N; i++) {
+      for(int j = 0; j < N; j++) {
+        int value = original(board, i, j);
+        form[i * N + j] = (byte) ((value == sudoku.Solver.MISSING) ? value : best_labels[value]);
+      }
+    }
+  }
+
+  /**
+   * Map a board in canonical form, typically the solution of the canonical
+   * form, back through the inverse of the transform of the last board
+   * canonicalised.
+   */
+  public void toOriginal(byte[] form, int[][] board)
+  {
+    for(int i = 0; i < N; i++) {
+      for(int j = 0; j < N; j++) {
+        int value = form[i * N + j];
+        value = (value == sudoku.Solver.MISSING) ? value : best_values[value];
+
+        int row = best_rows[i];
+        int column = best_columns[j];
+        if(best_source == 0) {
+          board[row][column] = value;
+        } else {
+          board[column][row] = value;
+        }
+      }
+    }
+  }
+
+  /**
+   * The cell of the original board that ends up in row i, column j of the
+   * canonical form.
+   */
+  private int original(int[][] board, int i, int j)
+  {
+    int row = best_rows[i];
+    int column = best_columns[j];
+    return (best_source == 0) ? board[row][column] : board[column][row];
+  }
+
+  /**
+   * Find the transforms whose first row is the smallest possible.  Returns
+   * false if there are too many of them.
+   *
+   * The digits of a row are all different, so relabelled it is just 1, 2, 3
+   * and so on in the cells that have givens.  The smallest first row is then
+   * the row whose givens can be packed furthest left, with its stacks in
+   * order of how many givens they have, and the transforms that tie on it are
+   * the ones that pack its givens the same way.
+   */
+  private boolean findFirstRows()
+  {
+    int bestShape = 0;
+    for(int[] source : sources) {
+      for(int row = 0; row < N; row++) {
+        bestShape = Math.max(bestShape, getShape(source, row));
+      }
+    }
+
+    // Stack i of the first row starts with (bestShape >> 2 * (2 - i)) & 3 givens
+    int pattern = 0;
+    for(int stack = 0; stack < BOX; stack++) {
+      int count = (bestShape >> (2 * (BOX - 1 - stack))) & 3;
+      pattern |= ((1 << count) - 1) << (BOX * stack);
+    }
+
+    int next = 1;
+    for(int j = 0; j < N; j++) {
+      best[j] = ((pattern & (1 << j)) != 0) ? next++ : EMPTY;
+    }
+
+    candidate_count = 0;
+    for(int s = 0; s < 2; s++) {
+      int[] source = sources[s];
+
+      for(int row = 0; row < N; row++) {
+        if(getShape(source, row) != bestShape) {
+          continue;
+        }
+
+        // Stacks in order of how many givens they have, then the givens of
+        // each stack first
+        int[] counts = stack_counts;
+        for(int stack = 0; stack < BOX; stack++) {
+          counts[stack] = count(source, row * N + BOX * stack);
+        }
+
+        for(int stacks = 0; stacks < PERMUTATIONS.length; stacks++) {
+          int[] order = PERMUTATIONS[stacks];
+          if(counts[order[0]] < counts[order[1]] || counts[order[1]] < counts[order[2]]) {
+            continue;
+          }
+
+          for(int first = 0; first < PERMUTATIONS.length; first++) {
+            if(!packsGivens(source, row, order[0], PERMUTATIONS[first], counts[order[0]])) {
+              continue;
+            }
+            for(int second = 0; second < PERMUTATIONS.length; second++) {
+              if(!packsGivens(source, row, order[1], PERMUTATIONS[second], counts[order[1]])) {
+                continue;
+              }
+              for(int third = 0; third < PERMUTATIONS.length; third++) {
+                if(!packsGivens(source, row, order[2], PERMUTATIONS[third], counts[order[2]])) {
+                  continue;
+                }
+
+                if(candidate_count == MAX_CANDIDATES) {
+                  return false;
+                }
+                candidate_sources[candidate_count] = s;
+                candidate_rows[candidate_count] = row;
+                candidate_columns[candidate_count] = ((stacks * 6 + first) * 6 + second) * 6 + third;
+                candidate_count++;
+              }
+            }
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * The number of givens in each stack of a row, biggest first, packed two
+   * bits each into an int.  Rows whose givens can be packed further left have
+   * bigger shapes.
+   */
+  private static int getShape(int[] source, int row)
+  {
+    int a = count(source, row * N);
+    int b = count(source, row * N + BOX);
+    int c = count(source, row * N + 2 * BOX);
+
+    int high = Math.max(a, Math.max(b, c));
+    int low = Math.min(a, Math.min(b, c));
+    int middle = a + b + c - high - low;
+    return (high << 4) | (middle << 2) | low;
+  }
+
+  /**
+   * Whether an order of the columns of a stack puts the given number of
+   * givens of a row first.
+   */
+  private static boolean packsGivens(int[] source, int row, int stack, int[] order, int count)
+  {
+    for(int i = 0; i < BOX; i++) {
+      boolean given = source[row * N + BOX * stack + order[i]] != EMPTY;
+      if(given != (i < count)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The number of givens in the three cells of a source from an offset.
+   */
+  private static int count(int[] source, int offset)
+  {
+    int count = 0;
+    for(int i = offset; i < offset + BOX; i++) {
+      if(source[i] != EMPTY) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Try every way of filling the rest of the rows of <code>trial</code> from
+   * the given depth, keeping bands together, and update <code>best</code>
+   * whenever one is smaller.  The rows above the depth are the same as those
+   * of <code>best</code>, so each row only needs comparing with the row of
+   * <code>best</code> at the same depth.
+   */
+  private void completeRows(int depth, int used, boolean improved)
+  {
+    if(depth == N) {
+      if(improved) {
+        System.arraycopy(trial_rows, 0, best_rows, 0, N);
+        System.arraycopy(depth_labels[N], 0, best_labels, 0, N + 1);
+        best_columns = trial_columns;
+        best_source = trial_source;
+      }
+      return;
+    }
+
+    // The first row of a band can come from any band that's left, the others
+    // from the band the first came from
+    int first = trial_rows[depth - depth % BOX];
+    for(int row = 0; row < N; row++) {
+      if((used & (1 << row)) != 0) {
+        continue;
+      }
+      if(depth % BOX == 0 ? (used & (BAND_MASK << (row - row % BOX))) != 0 : row / BOX != first / BOX) {
+        continue;
+      }
+
+      trial_rows[depth] = row;
+      int comparison = relabelRow(depth);
+      if(comparison > 0) {
+        continue;
+      }
+
+      if(comparison < 0) {
+        // A new best, which everything below has to beat from now on
+        System.arraycopy(trial, depth * N, best, depth * N, N);
+        Arrays.fill(best, (depth + 1) * N, NUM_CELLS, EMPTY + 1);
+      }
+
+      completeRows(depth + 1, used | (1 << row), improved || comparison < 0);
+    }
+  }
+
+  /**
+   * Relabel row <code>trial_rows[depth]</code> of the trial source into
+   * <code>trial</code>, carrying on from the labels of the rows above, and
+   * compare it with the same row of <code>best</code>.
+   */
+  private int relabelRow(int depth)
+  {
+    int[] labels = depth_labels[depth + 1];
+    System.arraycopy(depth_labels[depth], 0, labels, 0, N + 1);
+    int next = depth_next[depth];
+
+    int[] source = sources[trial_source];
+    int offset = trial_rows[depth] * N;
+    int comparison = 0;
+
+    for(int j = 0; j < N; j++) {
+      int value = source[offset + trial_columns[j]];
+      if(value != EMPTY) {
+        if(labels[value] == 0) {
+          labels[value] = next++;
+        }
+        value = labels[value];
+      }
+
+      int id = depth * N + j;
+      trial[id] = value;
+      if(comparison == 0) {
+        comparison = value - best[id];
+        if(comparison > 0) {
+          return comparison;
+        }
+      }
+    }
+
+    depth_next[depth + 1] = next;
+    return comparison;
+  }
+}
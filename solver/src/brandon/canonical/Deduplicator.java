@@ -0,0 +1,271 @@
+package brandon.canonical;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tool that removes duplicate boards from a corpus, treating boards with the
+ * same canonical form (see <code>Canonicalizer</code>) as duplicates.
+ *
+ * It writes the first board of every canonical form to a new corpus, and an
+ * index with a line for every board read: its line number in the input
+ * (counting from 1) and a tab, then the canonical id of the board.  The
+ * canonical id is the index of the board's first occurrence in the new
+ * corpus (counting from 0, like <code>sudoku.Corpus</code>).  Given a file
+ * of solutions the solutions of the boards that are kept are written too.
+ * <pre>
+ *   java brandon.canonical.Deduplicator sudoku-inputs.txt unique-inputs.txt index.txt \
+ *       sudoku-outputs.txt unique-outputs.txt
+ * </pre>
+ *
+ * The input is streamed in batches, and each batch is canonicalised on every
+ * core before its boards are looked up in order, so the output doesn't
+ * depend on the number of threads.  Only a 128 bit fingerprint of each
+ * canonical form is remembered, in a primitive hash table, which takes 20
+ * bytes a slot at up to two thirds full.  Boards other than 9 x 9, and the
+ * few that are too symmetric to canonicalise cheaply, are only matched with
+ * exact duplicates.
+ */
+public final class Deduplicator
+{
+  private static final int BATCH_SIZE = 1 << 14;
+
+  // Seeds that keep fingerprints of canonical forms apart from fingerprints of boards as they are.
+  private static final long CANONICAL_SEED = 0x243f6a8885a308d3L;
+  private static final long RAW_SEED = 0x13198a2e03707344L;
+
+  public static void main(String[] args) throws Exception
+  {
+    if(args.length != 3 && args.length != 5) {
+      System.err.println("Usage: java brandon.canonical.Deduplicator <input> <deduplicated output> <index output> [<solutions> <deduplicated solutions output>]");
+      System.exit(1);
+    }
+
+    long start = System.nanoTime();
+
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    Fingerprinter[] fingerprinters = new Fingerprinter[numThreads];
+    for(int i = 0; i < numThreads; i++) {
+      fingerprinters[i] = new Fingerprinter();
+    }
+
+    String[] lines = new String[BATCH_SIZE];
+    String[] solutions = new String[BATCH_SIZE];
+    long[] lineNumbers = new long[BATCH_SIZE];
+    long[] highs = new long[BATCH_SIZE];
+    long[] lows = new long[BATCH_SIZE];
+
+    FingerprintTable table = new FingerprintTable(BATCH_SIZE);
+    long lineNumber = 0;
+    long count = 0;
+
+    BufferedReader in = open(args[0]);
+    BufferedReader solutionsIn = (args.length == 5) ? open(args[3]) : null;
+    Writer out = create(args[1]);
+    Writer index = create(args[2]);
+    Writer solutionsOut = (args.length == 5) ? create(args[4]) : null;
+    try {
+      while(true) {
+        // Read a batch of boards, and their solutions
+        int size = 0;
+        String line;
+        while(size < BATCH_SIZE && (line = in.readLine()) != null) {
+          lineNumber++;
+          String solution = (solutionsIn == null) ? null : solutionsIn.readLine();
+          if(line.length() == 0) {
+            continue;
+          }
+
+          if(sudoku.Driver.getBoardSize(line.length()) == 0) {
+            throw new IOException(args[0] + " line " + lineNumber + " has " + line.length()
+                + " characters, not a 9 x 9, 16 x 16 or 25 x 25 board");
+          }
+
+          if(solutionsIn != null && solution == null) {
+            throw new IOException("fewer solutions than boards, missing solution for line " + lineNumber);
+          }
+
+          lines[size] = line;
+          solutions[size] = solution;
+          lineNumbers[size] = lineNumber;
+          size++;
+        }
+
+        if(size == 0) {
+          break;
+        }
+
+        fingerprint(executor, fingerprinters, lines, size, highs, lows);
+
+        // Look the boards up in order, so that the first of each form is kept
+        for(int i = 0; i < size; i++) {
+          int id = table.size();
+          int existing = table.putIfAbsent(highs[i], lows[i], id);
+          if(existing == -1) {
+            out.write(lines[i]);
+            out.write('\n');
+            if(solutionsOut != null) {
+              solutionsOut.write(solutions[i]);
+              solutionsOut.write('\n');
+            }
+          } else {
+            id = existing;
+          }
+
+          index.write(lineNumbers[i] + "\t" + id + "\n");
+        }
+        count += size;
+      }
+    } finally {
+      executor.shutdown();
+      in.close();
+      out.close();
+      index.close();
+      if(solutionsIn != null) {
+        solutionsIn.close();
+        solutionsOut.close();
+      }
+    }
+    long end = System.nanoTime();
+
+    System.out.printf("Deduplicated %1$d boards to %2$d: %3$f ms\n",
+        count, table.size(), (end - start) / (1000. * 1000.));
+  }
+
+  /**
+   * Fingerprint a batch of boards, splitting it between the fingerprinters.
+   */
+  private static void fingerprint(ExecutorService executor, Fingerprinter[] fingerprinters,
+                                  final String[] lines, int size, final long[] highs, final long[] lows)
+      throws Exception
+  {
+    int chunk = (size + fingerprinters.length - 1) / fingerprinters.length;
+
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for(int i = 0; i < fingerprinters.length && i * chunk < size; i++) {
+      final Fingerprinter fingerprinter = fingerprinters[i];
+      final int from = i * chunk;
+      final int to = Math.min(size, from + chunk);
+
+      futures.add(executor.submit(new Callable<Void>() {
+        public Void call()
+        {
+          for(int j = from; j < to; j++) {
+            fingerprinter.fingerprint(lines[j], highs, lows, j);
+          }
+          return null;
+        }
+      }));
+    }
+
+    for(Future<Void> future : futures) {
+      future.get();
+    }
+  }
+
+  private static BufferedReader open(String filename) throws IOException
+  {
+    return new BufferedReader(new InputStreamReader(new FileInputStream(filename)), 1 << 16);
+  }
+
+  private static Writer create(String filename) throws IOException
+  {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename)), 1 << 16);
+  }
+
+  /**
+   * Computes the fingerprints of boards on one thread.
+   */
+  private static final class Fingerprinter
+  {
+    private final Canonicalizer canonicalizer = new Canonicalizer();
+    private final int[][] board = new int[Canonicalizer.N][Canonicalizer.N];
+    private final byte[] form = new byte[Canonicalizer.NUM_CELLS];
+
+    /**
+     * Fingerprint the canonical form of a board, or the board as it is if it
+     * can't be canonicalised, into slot i of the arrays.
+     */
+    void fingerprint(String line, long[] highs, long[] lows, int i)
+    {
+      int n = sudoku.Driver.getBoardSize(line.length());
+      int[][] board = (n == Canonicalizer.N) ? this.board : new int[n][n];
+      sudoku.Driver.parseBoard(line, board);
+
+      byte[] cells;
+      long seed;
+      if(n == Canonicalizer.N && canonicalizer.canonicalize(board, form)) {
+        cells = form;
+        seed = CANONICAL_SEED;
+      } else {
+        cells = new byte[n * n];
+        for(int id = 0; id < cells.length; id++) {
+          cells[id] = (byte) board[id / n][id % n];
+        }
+        seed = RAW_SEED ^ n;
+      }
+
+      highs[i] = hashHigh(cells, seed);
+      lows[i] = hashLow(cells, seed);
+    }
+  }
+
+  /**
+   * FNV-1a over the cells, finished with a mix so that every bit depends on
+   * every cell.
+   */
+  static long hashHigh(byte[] cells, long seed)
+  {
+    long h = 0xcbf29ce484222325L ^ seed;
+    for(byte cell : cells) {
+      h = (h ^ (cell & 0xff)) * 0x100000001b3L;
+    }
+    return mix(h);
+  }
+
+  /**
+   * A multiply and rotate hash over the cells, independent of
+   * <code>hashHigh</code>.
+   */
+  static long hashLow(byte[] cells, long seed)
+  {
+    long h = seed;
+    for(byte cell : cells) {
+      h = Long.rotateLeft(h + (cell & 0xff) * 0x9e3779b97f4a7c15L, 31) * 0xc2b2ae3d27d4eb4fL;
+    }
+    return mix(h ^ cells.length);
+  }
+
+  /**
+   * The 64 bit finaliser of MurmurHash3.
+   */
+  private static long mix(long h)
+  {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Tool, not to be constructed.
+   */
+  private Deduplicator()
+  {
+  }
+}
@@ -0,0 +1,95 @@
+package brandon.canonical;
+
+/**
+ * Map from 128 bit fingerprints to int ids, kept in flat primitive arrays
+ * with open addressing and linear probing, so that tens of millions of
+ * entries cost 20 bytes a slot and no objects.  The fingerprints are assumed
+ * to be well mixed already, so the low bits of one half pick the slot.
+ *
+ * Not safe to share between threads.
+ */
+final class FingerprintTable
+{
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private long[] highs;
+  private long[] lows;
+
+  /**
+   * Id plus one of the entry in each slot, 0 for an empty slot.
+   */
+  private int[] ids;
+  private int size;
+
+  FingerprintTable(int expected)
+  {
+    int capacity = 16;
+    while(capacity < MAX_CAPACITY && capacity * 2 / 3 < expected) {
+      capacity *= 2;
+    }
+    allocate(capacity);
+  }
+
+  /**
+   * Add a fingerprint with the given id, unless it is already in the table.
+   * Returns the id it already had, or -1 if it was added.
+   */
+  int putIfAbsent(long high, long low, int id)
+  {
+    assert id >= 0 : id;
+
+    int mask = ids.length - 1;
+    for(int slot = (int) low & mask; ; slot = (slot + 1) & mask) {
+      if(ids[slot] == 0) {
+        highs[slot] = high;
+        lows[slot] = low;
+        ids[slot] = id + 1;
+        if(++size > ids.length * 2 / 3) {
+          grow();
+        }
+        return -1;
+      }
+
+      if(highs[slot] == high && lows[slot] == low) {
+        return ids[slot] - 1;
+      }
+    }
+  }
+
+  int size()
+  {
+    return size;
+  }
+
+  private void allocate(int capacity)
+  {
+    highs = new long[capacity];
+    lows = new long[capacity];
+    ids = new int[capacity];
+  }
+
+  private void grow()
+  {
+    if(ids.length == MAX_CAPACITY) {
+      throw new IllegalStateException("Too many fingerprints: " + size);
+    }
+
+    long[] oldHighs = highs;
+    long[] oldLows = lows;
+    int[] oldIds = ids;
+    allocate(oldIds.length * 2);
+
+    int mask = ids.length - 1;
+    for(int i = 0; i < oldIds.length; i++) {
+      if(oldIds[i] != 0) {
+        int slot = (int) oldLows[i] & mask;
+        while(ids[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        highs[slot] = oldHighs[i];
+        lows[slot] = oldLows[i];
+        ids[slot] = oldIds[i];
+      }
+    }
+  }
+}
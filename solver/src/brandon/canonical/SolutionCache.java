@@ -0,0 +1,82 @@
+package brandon.canonical;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded map from boards to their solutions, evicting the least recently
+ * used board once it is full.  Boards and solutions are kept as one byte per
+ * cell.  Safe to share between threads, every operation holds the cache's
+ * lock.
+ */
+final class SolutionCache
+{
+  private final Map<Key, byte[]> solutions;
+
+  SolutionCache(final int capacity)
+  {
+    solutions = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest)
+      {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Copy the solution of a board into <code>solution</code>.  Returns false
+   * if the board isn't in the cache.
+   */
+  synchronized boolean get(byte[] board, byte[] solution)
+  {
+    byte[] cached = solutions.get(new Key(board));
+    if(cached == null) {
+      return false;
+    }
+
+    System.arraycopy(cached, 0, solution, 0, cached.length);
+    return true;
+  }
+
+  /**
+   * Remember the solution of a board.  Both are copied.
+   */
+  synchronized void put(byte[] board, byte[] solution)
+  {
+    solutions.put(new Key(board.clone()), solution.clone());
+  }
+
+  synchronized int size()
+  {
+    return solutions.size();
+  }
+
+  /**
+   * Board used as a key, compared by content.
+   */
+  private static final class Key
+  {
+    private final byte[] cells;
+    private final int hash;
+
+    Key(byte[] cells)
+    {
+      this.cells = cells;
+      this.hash = Arrays.hashCode(cells);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      return (o instanceof Key) && Arrays.equals(cells, ((Key) o).cells);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+  }
+}
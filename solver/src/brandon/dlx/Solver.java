@@ -0,0 +1,262 @@
+package brandon.dlx;
+
+/**
+ * Solver that treats sudoku as an exact cover problem and solves it with
+ * Knuth's Algorithm X on dancing links.
+ *
+ * There are 324 constraints (every cell has a value, and every row, column
+ * and box has every value once) and 729 candidate placements, each of which
+ * satisfies exactly 4 constraints.  The links are kept in parallel int arrays
+ * rather than node objects.  The fully linked matrix is built once as a
+ * template, and each solve starts by copying the template into the working
+ * arrays, so a solve never allocates.
+ */
+public final class Solver implements sudoku.FlatSolver
+{
+  private static final int N = 9;
+  private static final int NUM_CELLS = N * N;
+
+  /**
+   * Number of constraint columns.
+   */
+  private static final int NUM_COLUMNS = 4 * NUM_CELLS;
+
+  /**
+   * Number of candidate placements (cell, value).
+   */
+  private static final int NUM_ROWS = NUM_CELLS * N;
+
+  /**
+   * Node 0 is the root, nodes 1-324 are the column headers, and each row's 4
+   * nodes follow.
+   */
+  private static final int ROOT = 0;
+  private static final int FIRST_ROW_NODE = NUM_COLUMNS + 1;
+  private static final int NUM_NODES = FIRST_ROW_NODE + 4 * NUM_ROWS;
+
+  // Template of the fully linked matrix, copied into the working arrays at the start of every solve
+  private static final int[] TEMPLATE_LEFT = new int[NUM_NODES];
+  private static final int[] TEMPLATE_RIGHT = new int[NUM_NODES];
+  private static final int[] TEMPLATE_UP = new int[NUM_NODES];
+  private static final int[] TEMPLATE_DOWN = new int[NUM_NODES];
+  private static final int[] TEMPLATE_SIZE = new int[NUM_COLUMNS + 1];
+
+  /**
+   * Column header of every node, and candidate placement of every row node.
+   * Neither changes while solving so they're shared.
+   */
+  private static final int[] COLUMN = new int[NUM_NODES];
+  private static final int[] ROW = new int[NUM_NODES];
+
+  static {
+    // Header list
+    for(int c = 0; c <= NUM_COLUMNS; c++) {
+      TEMPLATE_LEFT[c] = (c == 0) ? NUM_COLUMNS : c - 1;
+      TEMPLATE_RIGHT[c] = (c == NUM_COLUMNS) ? 0 : c + 1;
+      TEMPLATE_UP[c] = c;
+      TEMPLATE_DOWN[c] = c;
+      COLUMN[c] = c;
+    }
+
+    for(int row = 0; row < NUM_ROWS; row++) {
+      int cell = row / N;
+      int value = row % N;
+      int r = cell / N;
+      int c = cell % N;
+      int box = 3 * (r / 3) + c / 3;
+
+      int[] columns = {
+          1 + cell,
+          1 + NUM_CELLS + r * N + value,
+          1 + 2 * NUM_CELLS + c * N + value,
+          1 + 3 * NUM_CELLS + box * N + value,
+      };
+
+      int first = FIRST_ROW_NODE + 4 * row;
+      for(int k = 0; k < 4; k++) {
+        int node = first + k;
+        int column = columns[k];
+
+        // Link into the row
+        TEMPLATE_LEFT[node] = first + (k + 3) % 4;
+        TEMPLATE_RIGHT[node] = first + (k + 1) % 4;
+
+        // Link onto the bottom of the column
+        TEMPLATE_UP[node] = TEMPLATE_UP[column];
+        TEMPLATE_DOWN[node] = column;
+        TEMPLATE_DOWN[TEMPLATE_UP[column]] = node;
+        TEMPLATE_UP[column] = node;
+        TEMPLATE_SIZE[column]++;
+
+        COLUMN[node] = column;
+        ROW[node] = row;
+      }
+    }
+  }
+
+  private final int[] left = new int[NUM_NODES];
+  private final int[] right = new int[NUM_NODES];
+  private final int[] up = new int[NUM_NODES];
+  private final int[] down = new int[NUM_NODES];
+  private final int[] size = new int[NUM_COLUMNS + 1];
+
+  /**
+   * Candidate placements chosen by the search, by depth.
+   */
+  private final int[] solution = new int[NUM_CELLS];
+
+  public final void solve(int[][] array)
+  {
+    reset();
+
+    for(int r = 0; r < N; r++) {
+      for(int c = 0; c < N; c++) {
+        int value = array[r][c];
+        if(value != MISSING && !place(r * N + c, value)) {
+          return;
+        }
+      }
+    }
+
+    int depth = search(0);
+    for(int i = 0; i < depth; i++) {
+      int row = solution[i];
+      array[row / NUM_CELLS][(row / N) % N] = row % N + 1;
+    }
+  }
+
+  public final void solve(byte[] cells, int offset)
+  {
+    reset();
+
+    for(int cell = 0; cell < NUM_CELLS; cell++) {
+      int value = cells[offset + cell];
+      if(value != MISSING && !place(cell, value)) {
+        return;
+      }
+    }
+
+    int depth = search(0);
+    for(int i = 0; i < depth; i++) {
+      int row = solution[i];
+      cells[offset + row / N] = (byte) (row % N + 1);
+    }
+  }
+
+  public final void solveAll(byte[] cells, int offset, int count)
+  {
+    for(int i = 0; i < count; i++) {
+      solve(cells, offset + i * NUM_CELLS);
+    }
+  }
+
+  private void reset()
+  {
+    System.arraycopy(TEMPLATE_LEFT, 0, left, 0, NUM_NODES);
+    System.arraycopy(TEMPLATE_RIGHT, 0, right, 0, NUM_NODES);
+    System.arraycopy(TEMPLATE_UP, 0, up, 0, NUM_NODES);
+    System.arraycopy(TEMPLATE_DOWN, 0, down, 0, NUM_NODES);
+    System.arraycopy(TEMPLATE_SIZE, 0, size, 0, NUM_COLUMNS + 1);
+  }
+
+  /**
+   * Commit to a given value in a cell.  Returns false if that contradicts an
+   * earlier given.
+   */
+  private boolean place(int cell, int value)
+  {
+    int first = FIRST_ROW_NODE + 4 * (cell * N + value - 1);
+
+    // Every one of the row's columns must still be uncovered
+    int node = first;
+    do {
+      int column = COLUMN[node];
+      if(left[right[column]] != column) {
+        return false;
+      }
+      node = right[node];
+    } while(node != first);
+
+    node = first;
+    do {
+      cover(COLUMN[node]);
+      node = right[node];
+    } while(node != first);
+
+    return true;
+  }
+
+  /**
+   * Search for an exact cover of the remaining columns.  Returns the total
+   * number of placements in the solution found, or -1 if there isn't one.
+   */
+  private int search(int depth)
+  {
+    if(right[ROOT] == ROOT) {
+      return depth;
+    }
+
+    // Branch on the column with the fewest candidates
+    int best = right[ROOT];
+    int bestSize = size[best];
+    for(int column = right[best]; column != ROOT && bestSize > 1; column = right[column]) {
+      if(size[column] < bestSize) {
+        best = column;
+        bestSize = size[column];
+      }
+    }
+
+    if(bestSize == 0) {
+      return -1;
+    }
+
+    cover(best);
+    for(int row = down[best]; row != best; row = down[row]) {
+      solution[depth] = ROW[row];
+      for(int node = right[row]; node != row; node = right[node]) {
+        cover(COLUMN[node]);
+      }
+
+      int result = search(depth + 1);
+      if(result != -1) {
+        // The links are reset before the next solve, so no need to unwind
+        return result;
+      }
+
+      for(int node = left[row]; node != row; node = left[node]) {
+        uncover(COLUMN[node]);
+      }
+    }
+    uncover(best);
+
+    return -1;
+  }
+
+  private void cover(int column)
+  {
+    right[left[column]] = right[column];
+    left[right[column]] = left[column];
+
+    for(int row = down[column]; row != column; row = down[row]) {
+      for(int node = right[row]; node != row; node = right[node]) {
+        up[down[node]] = up[node];
+        down[up[node]] = down[node];
+        size[COLUMN[node]]--;
+      }
+    }
+  }
+
+  private void uncover(int column)
+  {
+    for(int row = up[column]; row != column; row = up[row]) {
+      for(int node = left[row]; node != row; node = left[node]) {
+        size[COLUMN[node]]++;
+        up[down[node]] = node;
+        down[up[node]] = node;
+      }
+    }
+
+    right[left[column]] = column;
+    left[right[column]] = column;
+  }
+}
@@ -0,0 +1,363 @@
+package brandon.generator;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import brandon.inference.Board;
+import brandon.inference.Solver;
+
+/**
+ * Tool that generates puzzles with a unique solution, sorted into buckets by
+ * how many clues they have.
+ *
+ * Each puzzle starts as a random full grid, filled by setting random values
+ * on a <code>Board</code> and letting it propagate, backtracking on a
+ * contradiction.  Clues are then taken away in random order, putting back any
+ * whose removal leaves more than one solution, until the puzzle is down to a
+ * clue count picked from the bucket that needs the most puzzles.  Puzzles
+ * that run out of clues to remove before getting there go to whichever bucket
+ * they fit.  Random puzzles rarely get below about 21 clues, so a bucket
+ * below that can take a very long time to fill.
+ * <pre>
+ *   java brandon.generator.Generator 10000 puzzles -buckets 22-25,26-29,30-35 -difficulty hard
+ * </pre>
+ * writes <code>puzzles-22-25.txt</code> and
+ * <code>puzzles-22-25-solutions.txt</code> and so on, in the line format that
+ * <code>sudoku.Driver</code> reads with <code>-input</code> and
+ * <code>-expected</code>.  With <code>-difficulty easy</code> only puzzles
+ * that inference solves without guessing are kept, with
+ * <code>-difficulty hard</code> only those that need a search.
+ *
+ * Every core generates puzzles, each with its own solver and random numbers,
+ * so the order of the puzzles in a file depends on the timing of the threads
+ * even with <code>-seed</code>.
+ */
+public final class Generator
+{
+  private static final int N = 9;
+  private static final int NUM_CELLS = N * N;
+
+  private static final String DEFAULT_BUCKETS = "22-25,26-29,30-35";
+
+  private enum Difficulty { ANY, EASY, HARD }
+
+  public static void main(String[] args) throws Exception
+  {
+    if(args.length < 2 || args.length % 2 != 0) {
+      usage();
+    }
+
+    int count = Integer.parseInt(args[0]);
+    String prefix = args[1];
+    String buckets = DEFAULT_BUCKETS;
+    Difficulty difficulty = Difficulty.ANY;
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    long seed = System.nanoTime();
+
+    for(int i = 2; i < args.length; i += 2) {
+      if("-buckets".equals(args[i])) {
+        buckets = args[i + 1];
+      } else if("-difficulty".equals(args[i])) {
+        difficulty = Difficulty.valueOf(args[i + 1].toUpperCase());
+      } else if("-threads".equals(args[i])) {
+        numThreads = Integer.parseInt(args[i + 1]);
+      } else if("-seed".equals(args[i])) {
+        seed = Long.parseLong(args[i + 1]);
+      } else {
+        usage();
+      }
+    }
+
+    String[] ranges = buckets.split(",");
+    Bucket[] bucketArray = new Bucket[ranges.length];
+    for(int i = 0; i < ranges.length; i++) {
+      String[] bounds = ranges[i].trim().split("-");
+      int min = Integer.parseInt(bounds[0]);
+      int max = Integer.parseInt(bounds[bounds.length - 1]);
+      bucketArray[i] = new Bucket(min, max, count, prefix + "-" + min + "-" + max);
+    }
+
+    long start = System.nanoTime();
+    Thread[] threads = new Thread[numThreads];
+    Worker[] workers = new Worker[numThreads];
+    for(int i = 0; i < numThreads; i++) {
+      workers[i] = new Worker(bucketArray, difficulty, new Random(seed + i));
+      threads[i] = new Thread(workers[i]);
+      threads[i].start();
+    }
+
+    long attempts = 0;
+    for(int i = 0; i < numThreads; i++) {
+      threads[i].join();
+      attempts += workers[i].attempts;
+    }
+
+    for(Bucket bucket : bucketArray) {
+      bucket.close();
+    }
+    long end = System.nanoTime();
+
+    for(Worker worker : workers) {
+      if(worker.failure != null) {
+        throw worker.failure;
+      }
+    }
+
+    long generated = (long) count * bucketArray.length;
+    double ms = (end - start) / (1000. * 1000.);
+    System.out.printf("Generated %1$d puzzles from %2$d grids: %3$f ms (%4$f puzzles/s)\n",
+        generated, attempts, ms, generated / (ms / 1000.));
+  }
+
+  private static void usage()
+  {
+    System.err.println("Usage: java brandon.generator.Generator <puzzles per bucket> <output prefix> [-buckets min-max,...] [-difficulty any|easy|hard] [-threads num] [-seed num]");
+    System.exit(1);
+  }
+
+  /**
+   * A range of clue counts, how many more puzzles it needs and the files its
+   * puzzles go to.
+   */
+  private static final class Bucket
+  {
+    final int min;
+    final int max;
+    final AtomicInteger remaining;
+
+    private final Writer puzzles;
+    private final Writer solutions;
+    private final StringBuilder line = new StringBuilder();
+
+    Bucket(int min, int max, int count, String filename) throws IOException
+    {
+      this.min = min;
+      this.max = max;
+      this.remaining = new AtomicInteger(count);
+      this.puzzles = create(filename + ".txt");
+      this.solutions = create(filename + "-solutions.txt");
+    }
+
+    boolean contains(int clues)
+    {
+      return min <= clues && clues <= max;
+    }
+
+    /**
+     * Claim a place in the bucket for a puzzle.  Returns false if the bucket
+     * is already full.
+     */
+    boolean claim()
+    {
+      while(true) {
+        int left = remaining.get();
+        if(left == 0) {
+          return false;
+        }
+        if(remaining.compareAndSet(left, left - 1)) {
+          return true;
+        }
+      }
+    }
+
+    synchronized void write(int[][] puzzle, int[][] solution) throws IOException
+    {
+      line.setLength(0);
+      puzzles.append(sudoku.Driver.formatBoard(puzzle, line).append('\n'));
+      line.setLength(0);
+      solutions.append(sudoku.Driver.formatBoard(solution, line).append('\n'));
+    }
+
+    void close() throws IOException
+    {
+      puzzles.close();
+      solutions.close();
+    }
+
+    private static Writer create(String filename) throws IOException
+    {
+      return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename)), 1 << 16);
+    }
+  }
+
+  /**
+   * Generates puzzles on one thread until every bucket is full.
+   */
+  private static final class Worker implements Runnable
+  {
+    private final Bucket[] buckets;
+    private final Difficulty difficulty;
+    private final Random random;
+    private final Solver solver = new Solver();
+
+    private final int[][] empty = new int[N][N];
+    private final int[][] solution = new int[N][N];
+    private final int[][] puzzle = new int[N][N];
+    private final int[] order = new int[NUM_CELLS];
+
+    long attempts;
+    Exception failure;
+
+    Worker(Bucket[] buckets, Difficulty difficulty, Random random)
+    {
+      this.buckets = buckets;
+      this.difficulty = difficulty;
+      this.random = random;
+
+      for(int[] row : empty) {
+        Arrays.fill(row, sudoku.Solver.MISSING);
+      }
+      for(int id = 0; id < NUM_CELLS; id++) {
+        order[id] = id;
+      }
+    }
+
+    public void run()
+    {
+      try {
+        Bucket target;
+        while((target = getNeediestBucket()) != null) {
+          attempts++;
+          fillGrid();
+          int clues = removeClues(target.min + random.nextInt(target.max - target.min + 1));
+
+          Bucket bucket = null;
+          for(Bucket b : buckets) {
+            if(b.contains(clues)) {
+              bucket = b;
+              break;
+            }
+          }
+
+          if(bucket == null || !isWanted() || !bucket.claim()) {
+            continue;
+          }
+          bucket.write(puzzle, solution);
+        }
+      } catch(Exception e) {
+        failure = e;
+      }
+    }
+
+    /**
+     * The bucket that needs the most puzzles, or null if they're all full.
+     */
+    private Bucket getNeediestBucket()
+    {
+      Bucket neediest = null;
+      for(Bucket bucket : buckets) {
+        int remaining = bucket.remaining.get();
+        if(remaining > 0 && (neediest == null || remaining > neediest.remaining.get())) {
+          neediest = bucket;
+        }
+      }
+      return neediest;
+    }
+
+    /**
+     * Fill <code>solution</code> with a random valid grid.
+     */
+    private void fillGrid()
+    {
+      Board board = Board.fromArray(empty);
+      boolean filled = fill(board);
+      assert filled;
+      Board.toArray(board, solution);
+    }
+
+    /**
+     * Set random values on the cell with the fewest possibilities until the
+     * board is full, backtracking on a contradiction.  Recursion is at most
+     * one level per cell.
+     */
+    private boolean fill(Board board)
+    {
+      int id = board.getCellToSearch();
+      if(id == -1) {
+        return true;
+      }
+
+      int[] possible = board.getPossibleValues(id);
+      int count = possible.length;
+      int[] shuffled = new int[count];
+      System.arraycopy(possible, 0, shuffled, 0, count);
+      shuffle(shuffled, count);
+
+      for(int value : shuffled) {
+        int mark = board.mark();
+        if(board.setValue(id, value) && fill(board)) {
+          return true;
+        }
+        board.undo(mark);
+      }
+
+      return false;
+    }
+
+    /**
+     * Copy the solution into <code>puzzle</code> and take clues away in
+     * random order while the solution stays unique, until there are no more
+     * than the target left.  Returns the number of clues left.
+     */
+    private int removeClues(int target)
+    {
+      for(int i = 0; i < N; i++) {
+        System.arraycopy(solution[i], 0, puzzle[i], 0, N);
+      }
+      shuffle(order, NUM_CELLS);
+
+      int clues = NUM_CELLS;
+      for(int i = 0; i < NUM_CELLS && clues > target; i++) {
+        int row = order[i] / N;
+        int column = order[i] % N;
+
+        int value = puzzle[row][column];
+        puzzle[row][column] = sudoku.Solver.MISSING;
+        if(solver.countSolutions(puzzle, 2) == 1) {
+          clues--;
+        } else {
+          puzzle[row][column] = value;
+        }
+      }
+
+      return clues;
+    }
+
+    private boolean isWanted()
+    {
+      switch(difficulty) {
+        case ANY:
+          return true;
+        case EASY:
+          return solver.solvesWithoutSearch(puzzle);
+        case HARD:
+          return !solver.solvesWithoutSearch(puzzle);
+        default:
+          throw new AssertionError(difficulty);
+      }
+    }
+
+    private void shuffle(int[] array, int count)
+    {
+      for(int i = count - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+      }
+    }
+  }
+
+  /**
+   * Tool, not to be constructed.
+   */
+  private Generator()
+  {
+  }
+}
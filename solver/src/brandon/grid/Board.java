@@ -0,0 +1,485 @@
+package brandon.grid;
+
+import java.util.Arrays;
+
+/**
+ * Representation of a sudoku board of any size that <code>Geometry</code>
+ * supports.
+ *
+ * The possibilities of a cell are an int with bit v set when v is still
+ * possible, so there are no tables indexed by every possible mask and the
+ * memory used only grows with the number of cells.
+ *
+ * This is the one implementation of naked and hidden singles, the trail and
+ * the possibility buckets.  <code>brandon.inference.Board</code> keeps a 9 x 9
+ * board of this class and adds its bitvector views and counters on top.
+ */
+public final class Board
+{
+  private final Geometry geometry;
+  private final int n;
+
+  /**
+   * Possibilities for every cell in the board.
+   */
+  private final int[] possibilities;
+
+  /**
+   * Version of the board.  Incremented each time the board is mutated.
+   */
+  private int version;
+
+  /**
+   * Trail of changes made to the possibilities, so that they can be undone
+   * when backtracking instead of copying the board.  Entry i records that
+   * cell trail_ids[i] had possibilities trail_possibilities[i] before it was
+   * changed.  Every entry shrinks a cell's possibilities, so a cell can't
+   * appear more than N times.  Null for boards that don't keep a trail.
+   */
+  private final int[] trail_ids;
+  private final int[] trail_possibilities;
+  private int trail_size;
+
+  /**
+   * Work stack of cells waiting to be set by <code>setValue</code>.  A cell
+   * only becomes a naked single once, so it can't be on the stack twice.
+   */
+  private final int[] pending_ids;
+  private final int[] pending_values;
+
+  /**
+   * Units with a cell whose possibilities have changed since the last call to
+   * <code>takeDirtyUnits</code>.
+   */
+  private final CellSet dirty;
+
+  /**
+   * Cells grouped by how many possibilities they have, bucket i holds the
+   * cells with i possibilities.
+   */
+  private final CellSet[] buckets;
+
+  /**
+   * Number of cells set by <code>setValue</code>, and of contradictions
+   * found, over the life of the board.
+   */
+  private long propagations;
+  private long contradictions;
+
+  private Board(Geometry geometry, boolean fill, boolean trail)
+  {
+    this.geometry = geometry;
+    this.n = geometry.getN();
+
+    int numCells = geometry.getNumCells();
+    possibilities = new int[numCells];
+    trail_ids = trail ? new int[numCells * n] : null;
+    trail_possibilities = trail ? new int[numCells * n] : null;
+    pending_ids = new int[numCells + 1];
+    pending_values = new int[numCells + 1];
+
+    dirty = new CellSet(geometry.getNumUnits());
+    buckets = new CellSet[n + 1];
+    for(int count = 0; count <= n; count++) {
+      buckets[count] = new CellSet(numCells);
+    }
+
+    if(fill) {
+      Arrays.fill(possibilities, geometry.getAllValues());
+      dirty.fill();
+      buckets[n].fill();
+    }
+  }
+
+  public Geometry getGeometry()
+  {
+    return geometry;
+  }
+
+  /**
+   * Set the value of a cell, and propagate it to every naked single that it
+   * creates.  Returns false on a contradiction, in which case the board is
+   * left part way through the propagation.
+   */
+  public final boolean setValue(int id, int value)
+  {
+    assert 0 <= id && id < possibilities.length : id;
+    assert 1 <= value && value <= n : value;
+
+    int pending = 0;
+    pending_ids[pending] = id;
+    pending_values[pending] = value;
+    pending++;
+
+    while(pending > 0) {
+      pending--;
+      id = pending_ids[pending];
+      int valueMask = 1 << pending_values[pending];
+      propagations++;
+
+      // Check to see if setting the specified value would cause a contradiction
+      if((possibilities[id] & valueMask) == 0) {
+        contradictions++;
+        return false;
+      }
+
+      // Set the value of the specified cell
+      assign(id, valueMask);
+
+      // Go to each peer and update their possibilities, detecting any
+      // contradictions
+      for(int peer : geometry.getPeers(id)) {
+        int oldPossibilityMask = possibilities[peer];
+        if((oldPossibilityMask & valueMask) == 0) {
+          continue;
+        }
+
+        int possibilityMask = oldPossibilityMask & ~valueMask;
+        if(possibilityMask == 0) {
+          contradictions++;
+          return false;
+        }
+
+        assign(peer, possibilityMask);
+
+        // A naked single, set it once this cell is done
+        if((possibilityMask & (possibilityMask - 1)) == 0) {
+          assert pending < pending_ids.length;
+          pending_ids[pending] = peer;
+          pending_values[pending] = Integer.numberOfTrailingZeros(possibilityMask);
+          pending++;
+        }
+      }
+
+      version++;
+    }
+
+    return true;
+  }
+
+  /**
+   * Change the possibilities of a cell, recording the old ones on the trail.
+   */
+  private void assign(int id, int possibilityMask)
+  {
+    int old = possibilities[id];
+    if(old == possibilityMask) {
+      return;
+    }
+
+    if(trail_ids != null) {
+      trail_ids[trail_size] = id;
+      trail_possibilities[trail_size] = old;
+      trail_size++;
+    }
+
+    possibilities[id] = possibilityMask;
+    for(int unit : geometry.getUnits(id)) {
+      dirty.add(unit);
+    }
+    buckets[Integer.bitCount(old)].remove(id);
+    buckets[Integer.bitCount(possibilityMask)].add(id);
+  }
+
+  /**
+   * Remove values (a mask with bit v set for value v) from the possibilities
+   * of a cell, setting the cell if only one possibility is left.  Returns
+   * false on a contradiction.
+   */
+  public final boolean removePossibilities(int id, int values)
+  {
+    int oldPossibilityMask = possibilities[id];
+    int possibilityMask = oldPossibilityMask & ~values;
+
+    // Nothing was changed
+    if(oldPossibilityMask == possibilityMask) {
+      return true;
+    }
+
+    // Contradiction
+    if(possibilityMask == 0) {
+      contradictions++;
+      return false;
+    }
+
+    if((possibilityMask & (possibilityMask - 1)) == 0) {
+      return setValue(id, Integer.numberOfTrailingZeros(possibilityMask));
+    }
+
+    assign(id, possibilityMask);
+    version++;
+    return true;
+  }
+
+  /**
+   * Set every hidden single (a value that only one cell of a unit can take)
+   * in the given units.  Returns how many cells were set, or -1 on a
+   * contradiction, including a value with no place left in a unit.
+   */
+  public final int setHiddenSingles(CellSet units)
+  {
+    int allValues = geometry.getAllValues();
+    int count = 0;
+
+    for(int unit = units.first(); unit != -1; unit = units.next(unit)) {
+      int[] members = geometry.getUnitMembers(unit);
+
+      // Values possible in at least one and in at least two of the members
+      int once = 0;
+      int twice = 0;
+      for(int id : members) {
+        int possibilities = this.possibilities[id];
+        twice |= once & possibilities;
+        once |= possibilities;
+      }
+
+      if(once != allValues) {
+        contradictions++;
+        return -1;
+      }
+
+      int singles = once & ~twice;
+      while(singles != 0) {
+        int valueMask = singles & -singles;
+        singles &= singles - 1;
+
+        for(int id : members) {
+          int possibilities = this.possibilities[id];
+          if((possibilities & valueMask) != 0) {
+            // Cells that are already fixed need nothing more done
+            if(possibilities != valueMask) {
+              count++;
+              if(!setValue(id, Integer.numberOfTrailingZeros(valueMask))) {
+                return -1;
+              }
+            }
+            break;
+          }
+        }
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Copy the units with a cell whose possibilities have changed since the last
+   * call into the given set, and start recording changes afresh.  Undoing
+   * changes marks their units too.
+   */
+  public final CellSet takeDirtyUnits(CellSet units)
+  {
+    units.set(dirty);
+    dirty.clear();
+    return units;
+  }
+
+  /**
+   * Mark the current state of the board so that it can be returned to with
+   * <code>undo</code>.  Only boards that keep a trail can be marked.
+   */
+  public final int mark()
+  {
+    assert trail_ids != null;
+    return trail_size;
+  }
+
+  /**
+   * Undo every change made since the given mark.
+   */
+  public final void undo(int mark)
+  {
+    assert trail_ids != null;
+    assert 0 <= mark && mark <= trail_size : mark;
+
+    while(trail_size > mark) {
+      trail_size--;
+      int id = trail_ids[trail_size];
+      buckets[Integer.bitCount(possibilities[id])].remove(id);
+      possibilities[id] = trail_possibilities[trail_size];
+      buckets[Integer.bitCount(possibilities[id])].add(id);
+      for(int unit : geometry.getUnits(id)) {
+        dirty.add(unit);
+      }
+    }
+
+    version++;
+  }
+
+  /**
+   * Find a cell with the fewest possibilities that hasn't been fixed yet, or
+   * -1 if every cell has been fixed.  Ties go to the lowest cell id.
+   */
+  public final int getCellToSearch()
+  {
+    for(int count = 2; count <= n; count++) {
+      if(!buckets[count].isEmpty()) {
+        return buckets[count].first();
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * The cells that have the given number of possibilities.  Callers must not
+   * modify the returned set.
+   */
+  public final CellSet getCellsWithCount(int count)
+  {
+    return buckets[count];
+  }
+
+  /**
+   * Bit mask of the possible values of a cell, bit v set when v is possible.
+   */
+  public final int getPossibilities(int id)
+  {
+    return possibilities[id];
+  }
+
+  public final int getVersion()
+  {
+    return version;
+  }
+
+  public final long getPropagations()
+  {
+    return propagations;
+  }
+
+  public final long getContradictions()
+  {
+    return contradictions;
+  }
+
+  public final String toString()
+  {
+    int width = n + 1;
+    StringBuilder sb = new StringBuilder();
+
+    for(int row = 0; row < n; row++) {
+      if(row > 0 && row % geometry.getBoxRows() == 0) {
+        for(int column = 0; column < n; column++) {
+          if(column > 0 && column % geometry.getBoxColumns() == 0) {
+            sb.append("+-");
+          }
+          for(int i = 0; i < width; i++) {
+            sb.append('-');
+          }
+        }
+        sb.append('\n');
+      }
+
+      for(int column = 0; column < n; column++) {
+        if(column > 0 && column % geometry.getBoxColumns() == 0) {
+          sb.append("| ");
+        }
+
+        int mask = possibilities[row * n + column];
+        for(int value = 1; value <= n; value++) {
+          sb.append((mask & (1 << value)) != 0 ? Character.forDigit(value, Character.MAX_RADIX) : '.');
+        }
+        sb.append(' ');
+      }
+      sb.append('\n');
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Construct a board of the given geometry with every value possible in
+   * every cell.  The board keeps a trail, so it can be backtracked with
+   * <code>mark</code> and <code>undo</code>.
+   */
+  public static Board empty(Geometry geometry)
+  {
+    return new Board(geometry, true, true);
+  }
+
+  /**
+   * Construct a board from an N x N array, taking the geometry from the
+   * array's size.  Returns null if the givens contradict each other.
+   */
+  public static Board fromArray(int[][] array)
+  {
+    Geometry geometry = Geometry.forSize(array.length);
+    Board board = empty(geometry);
+    int n = geometry.getN();
+
+    for(int i = 0; i < n; i++) {
+      assert array[i].length == n;
+
+      for(int j = 0; j < n; j++) {
+        int value = array[i][j];
+        if(value != sudoku.Solver.MISSING && !board.setValue(i * n + j, value)) {
+          return null;
+        }
+      }
+    }
+
+    return board;
+  }
+
+  /**
+   * Construct a board from a flat buffer of cells.  Returns null if the
+   * givens contradict each other.
+   */
+  public static Board fromFlat(Geometry geometry, byte[] cells, int offset)
+  {
+    Board board = empty(geometry);
+
+    for(int id = 0; id < geometry.getNumCells(); id++) {
+      int value = cells[offset + id];
+      if(value != sudoku.Solver.MISSING && !board.setValue(id, value)) {
+        return null;
+      }
+    }
+
+    return board;
+  }
+
+  /**
+   * Construct a board from another board.  The copy doesn't keep a trail,
+   * and its counters start from zero.
+   */
+  public static Board fromBoard(Board other)
+  {
+    Board board = new Board(other.geometry, false, false);
+    board.version = other.version;
+    board.dirty.set(other.dirty);
+    for(int count = 0; count <= board.n; count++) {
+      board.buckets[count].set(other.buckets[count]);
+    }
+    System.arraycopy(other.possibilities, 0, board.possibilities, 0, board.possibilities.length);
+    return board;
+  }
+
+  /**
+   * Copy the data in the specified board into the provided array.
+   */
+  public static void toArray(Board board, int[][] array)
+  {
+    int n = board.n;
+    assert array.length == n;
+
+    for(int id = 0; id < board.possibilities.length; id++) {
+      int mask = board.possibilities[id];
+      assert Integer.bitCount(mask) == 1;
+      array[id / n][id % n] = Integer.numberOfTrailingZeros(mask);
+    }
+  }
+
+  /**
+   * Copy the data in the specified board into a flat buffer of cells.
+   */
+  public static void toFlat(Board board, byte[] cells, int offset)
+  {
+    for(int id = 0; id < board.possibilities.length; id++) {
+      int mask = board.possibilities[id];
+      assert Integer.bitCount(mask) == 1;
+      cells[offset + id] = (byte) Integer.numberOfTrailingZeros(mask);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package brandon.grid;
+
+import java.util.Arrays;
+
+/**
+ * Mutable set of cell ids (or any other small ints) for boards of any size,
+ * kept as an array of 64 bit words.  The <code>brandon.inference</code>
+ * version is fixed at two words for 81 cells, this one holds the 256 cells
+ * of a 16 x 16 board in four words and the 625 of a 25 x 25 board in ten.
+ *
+ * None of the operations allocate.
+ */
+public final class CellSet
+{
+  private static final int WORD_BITS = 64;
+
+  private final long[] words;
+  private final int capacity;
+
+  /**
+   * Create an empty set that can hold ids 0 to capacity-1.
+   */
+  public CellSet(int capacity)
+  {
+    this.capacity = capacity;
+    this.words = new long[(capacity + WORD_BITS - 1) / WORD_BITS];
+  }
+
+  public CellSet add(int id)
+  {
+    assert 0 <= id && id < capacity : id;
+    words[id / WORD_BITS] |= 1L << id;
+    return this;
+  }
+
+  public CellSet remove(int id)
+  {
+    assert 0 <= id && id < capacity : id;
+    words[id / WORD_BITS] &= ~(1L << id);
+    return this;
+  }
+
+  public boolean contains(int id)
+  {
+    assert 0 <= id && id < capacity : id;
+    return (words[id / WORD_BITS] & (1L << id)) != 0;
+  }
+
+  public CellSet clear()
+  {
+    Arrays.fill(words, 0);
+    return this;
+  }
+
+  /**
+   * Add every id from 0 to capacity-1.
+   */
+  public CellSet fill()
+  {
+    Arrays.fill(words, -1L);
+    int extra = words.length * WORD_BITS - capacity;
+    if(extra > 0) {
+      words[words.length - 1] >>>= extra;
+    }
+    return this;
+  }
+
+  /**
+   * Overwrite this set with the contents of another of the same capacity.
+   */
+  public CellSet set(CellSet that)
+  {
+    assert capacity == that.capacity;
+    System.arraycopy(that.words, 0, words, 0, words.length);
+    return this;
+  }
+
+  public boolean isEmpty()
+  {
+    for(long word : words) {
+      if(word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int size()
+  {
+    int size = 0;
+    for(long word : words) {
+      size += Long.bitCount(word);
+    }
+    return size;
+  }
+
+  /**
+   * Determine the smallest id in the set, or -1 if the set is empty.
+   */
+  public int first()
+  {
+    return next(-1);
+  }
+
+  /**
+   * Determine the smallest id in the set that is greater than the given id,
+   * or -1 if there isn't one.
+   */
+  public int next(int id)
+  {
+    int from = id + 1;
+    if(from >= capacity) {
+      return -1;
+    }
+
+    int index = from / WORD_BITS;
+    long word = words[index] & (-1L << from);
+    while(true) {
+      if(word != 0) {
+        return index * WORD_BITS + Long.numberOfTrailingZeros(word);
+      }
+      if(++index == words.length) {
+        return -1;
+      }
+      word = words[index];
+    }
+  }
+
+  @Override
+  public boolean equals(Object o)
+  {
+    if(!(o instanceof CellSet)) {
+      return false;
+    }
+
+    CellSet that = (CellSet) o;
+    return capacity == that.capacity && Arrays.equals(words, that.words);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Arrays.hashCode(words);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder("{");
+    for(int id = first(); id != -1; id = next(id)) {
+      if(sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(id);
+    }
+    return sb.append('}').toString();
+  }
+}
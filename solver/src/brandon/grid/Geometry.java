@@ -0,0 +1,194 @@
+package brandon.grid;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shape of an N x N board: its boxes, and the units (rows, columns and
+ * boxes) and peers of every cell.
+ *
+ * Boxes are <code>boxRows</code> by <code>boxColumns</code> with
+ * <code>N = boxRows * boxColumns</code>, so 9, 16 and 25 have square boxes
+ * and sizes like 6 or 12 have rectangular ones.  Values are 1 to N, so that
+ * the possibilities of a cell fit in the bits of an int.
+ *
+ * Geometries are immutable and shared, there is only ever one per size.
+ */
+public final class Geometry
+{
+  /**
+   * Largest supported board size, values are kept as bits 1 to N of an int.
+   */
+  public static final int MAX_N = 30;
+
+  private static final AtomicReferenceArray<Geometry> GEOMETRIES =
+      new AtomicReferenceArray<Geometry>(MAX_N + 1);
+
+  private final int n;
+  private final int boxRows;
+  private final int boxColumns;
+  private final int numCells;
+  private final int numUnits;
+
+  /**
+   * Members of every unit.  Units 0 to N-1 are rows, N to 2N-1 are columns
+   * and 2N to 3N-1 are boxes.
+   */
+  private final int[][] units;
+
+  /**
+   * The row, column and box unit of every cell.
+   */
+  private final int[][] unitsOf;
+
+  /**
+   * Every other cell that shares a unit with a cell.
+   */
+  private final int[][] peers;
+
+  private Geometry(int boxRows, int boxColumns)
+  {
+    this.boxRows = boxRows;
+    this.boxColumns = boxColumns;
+    this.n = boxRows * boxColumns;
+    this.numCells = n * n;
+    this.numUnits = 3 * n;
+
+    unitsOf = new int[numCells][3];
+    for(int id = 0; id < numCells; id++) {
+      int row = id / n;
+      int column = id % n;
+      int box = (row / boxRows) * boxRows + column / boxColumns;
+
+      unitsOf[id][0] = row;
+      unitsOf[id][1] = n + column;
+      unitsOf[id][2] = 2 * n + box;
+    }
+
+    units = new int[numUnits][n];
+    int[] sizes = new int[numUnits];
+    for(int id = 0; id < numCells; id++) {
+      for(int unit : unitsOf[id]) {
+        units[unit][sizes[unit]++] = id;
+      }
+    }
+
+    peers = new int[numCells][];
+    CellSet scratch = new CellSet(numCells);
+    for(int id = 0; id < numCells; id++) {
+      scratch.clear();
+      for(int unit : unitsOf[id]) {
+        for(int member : units[unit]) {
+          scratch.add(member);
+        }
+      }
+      scratch.remove(id);
+
+      peers[id] = new int[scratch.size()];
+      int count = 0;
+      for(int peer = scratch.first(); peer != -1; peer = scratch.next(peer)) {
+        peers[id][count++] = peer;
+      }
+    }
+  }
+
+  /**
+   * Get the geometry of an N x N board.  Its boxes are as close to square as
+   * N allows, which picks the usual boxes for every size people play.
+   */
+  public static Geometry forSize(int n)
+  {
+    if(n < 1 || n > MAX_N) {
+      throw new IllegalArgumentException("invalid board size: " + n);
+    }
+
+    Geometry geometry = GEOMETRIES.get(n);
+    if(geometry == null) {
+      geometry = create(n);
+    }
+
+    return geometry;
+  }
+
+  private static synchronized Geometry create(int n)
+  {
+    // Another thread may have won the race while we waited for the lock
+    Geometry geometry = GEOMETRIES.get(n);
+    if(geometry == null) {
+      int boxRows = (int) Math.sqrt(n);
+      while(n % boxRows != 0) {
+        boxRows--;
+      }
+
+      geometry = new Geometry(boxRows, n / boxRows);
+      GEOMETRIES.set(n, geometry);
+    }
+
+    return geometry;
+  }
+
+  /**
+   * Number of rows, columns and values.
+   */
+  public int getN()
+  {
+    return n;
+  }
+
+  public int getBoxRows()
+  {
+    return boxRows;
+  }
+
+  public int getBoxColumns()
+  {
+    return boxColumns;
+  }
+
+  public int getNumCells()
+  {
+    return numCells;
+  }
+
+  public int getNumUnits()
+  {
+    return numUnits;
+  }
+
+  /**
+   * Mask with bits 1 to N set, every value.
+   */
+  public int getAllValues()
+  {
+    return ((1 << n) - 1) << 1;
+  }
+
+  /**
+   * Determine all of the members of a unit.  Callers must not modify the
+   * returned array.
+   */
+  public int[] getUnitMembers(int unit)
+  {
+    assert 0 <= unit && unit < numUnits : unit;
+    return units[unit];
+  }
+
+  /**
+   * Determine the row, column and box units of a cell.  Callers must not
+   * modify the returned array.
+   */
+  public int[] getUnits(int id)
+  {
+    assert 0 <= id && id < numCells : id;
+    return unitsOf[id];
+  }
+
+  /**
+   * Determine all of the peers of a cell.  Callers must not modify the
+   * returned array.
+   */
+  public int[] getPeers(int id)
+  {
+    assert 0 <= id && id < numCells : id;
+    return peers[id];
+  }
+}
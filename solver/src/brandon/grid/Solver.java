@@ -0,0 +1,149 @@
+package brandon.grid;
+
+/**
+ * Inference solver for boards of any size that <code>Geometry</code>
+ * supports, with the size taken from the board being solved: 9 x 9, 16 x 16
+ * and 25 x 25 boards all work.
+ *
+ * Uses the same approach as <code>brandon.inference.Solver</code> with its
+ * default settings, naked singles as values are set, hidden singles in units
+ * that have changed and a search on the cell with the fewest possibilities
+ * when inference gets stuck.  Both run the singles of <code>Board</code>.
+ */
+public final class Solver implements sudoku.SolutionCounter
+{
+  /**
+   * Geometry the scratch space below was sized for.
+   */
+  private Geometry geometry;
+
+  // Explicit stack for the search, one frame per branch: the board's trail mark before branching,
+  // the cell branched on and the values of it still to try.
+  private int[] search_marks;
+  private int[] search_ids;
+  private int[] search_values;
+
+  // Units to look for hidden singles in, taken from the board each pass.
+  private CellSet infer_units;
+
+  public final void solve(int[][] array)
+  {
+    Board board = Board.fromArray(array);
+    if(board != null && search(board, 1) == 1) {
+      Board.toArray(board, array);
+    }
+  }
+
+  public final int countSolutions(int[][] array, int limit)
+  {
+    assert limit >= 1 : limit;
+
+    Board board = Board.fromArray(array);
+    if(board == null) {
+      // The givens contradict each other
+      return 0;
+    }
+
+    return search(board, limit);
+  }
+
+  /**
+   * Size the scratch space for the geometry of a board, keeping what's there
+   * when consecutive boards are the same size.
+   */
+  private void prepare(Geometry geometry)
+  {
+    if(this.geometry == geometry) {
+      return;
+    }
+
+    int numCells = geometry.getNumCells();
+    search_marks = new int[numCells];
+    search_ids = new int[numCells];
+    search_values = new int[numCells];
+    infer_units = new CellSet(geometry.getNumUnits());
+    this.geometry = geometry;
+  }
+
+  /**
+   * Count the solutions of a board by inference, branching whenever inference
+   * gets stuck, and stop once the limit has been reached.  When the limit is
+   * reached the board is left holding the last solution found.
+   */
+  private final int search(Board board, int limit)
+  {
+    prepare(board.getGeometry());
+
+    int solutions = 0;
+    int depth = 0;
+    boolean consistent = infer(board);
+
+    while(true) {
+      if(consistent) {
+        int id = board.getCellToSearch();
+        if(id == -1) {
+          // Nothing left to search, we've found a solution
+          solutions++;
+          if(solutions == limit) {
+            return solutions;
+          }
+        } else {
+          search_marks[depth] = board.mark();
+          search_ids[depth] = id;
+          search_values[depth] = board.getPossibilities(id);
+          depth++;
+        }
+      }
+
+      // Try the next value of the innermost branch, backtracking out of any
+      // branches that have run out of values
+      consistent = false;
+      while(!consistent) {
+        if(depth == 0) {
+          return solutions;
+        }
+
+        int top = depth - 1;
+        board.undo(search_marks[top]);
+
+        int values = search_values[top];
+        if(values == 0) {
+          // Nothing worked, backtrack
+          depth--;
+          continue;
+        }
+
+        int value = Integer.numberOfTrailingZeros(values);
+        search_values[top] = values & (values - 1);
+
+        consistent = board.setValue(search_ids[top], value) && infer(board);
+      }
+    }
+  }
+
+  /**
+   * Find hidden singles until there are none left.  Returns false on a
+   * contradiction.
+   */
+  private final boolean infer(Board board)
+  {
+    int oldVersion;
+    do {
+      oldVersion = board.getVersion();
+      if(!inferHiddenSingles(board)) {
+        return false;
+      }
+    } while(board.getVersion() != oldVersion);
+
+    return true;
+  }
+
+  /**
+   * Find all hidden singles in the units that have changed since the last
+   * pass.  Returns false on a contradiction.
+   */
+  private final boolean inferHiddenSingles(Board board)
+  {
+    return board.setHiddenSingles(board.takeDirtyUnits(infer_units)) != -1;
+  }
+}
@@ -1,17 +1,82 @@
 package brandon.inference;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * Helper class to keep track of bitvectors and their factories.
+ *
+ * Bitvectors from a factory are compared by identity, so there must only ever
+ * be one factory per width.  Factories are published through an atomic array
+ * so that readers never see a partially constructed factory, and are only ever
+ * constructed while holding the registry lock.
  */
 public final class Bitvectors
 {
-  private static final BitvectorFactory[] FACTORIES = new BitvectorFactory[100];
+  /**
+   * System property with a comma separated list of widths to construct when
+   * this class is initialised.  Set it to an empty string to disable warm-up.
+   */
+  public static final String WARMUP_PROPERTY = "brandon.bitvectors.warmup";
+
+  /**
+   * System property that, when true, builds narrow factories without their
+   * precomputed operation tables.  This cuts startup time and heap use at
+   * the cost of doing the operations arithmetically.
+   */
+  public static final String COMPACT_PROPERTY = "brandon.bitvectors.compact";
 
+  private static final boolean COMPACT = Boolean.getBoolean(COMPACT_PROPERTY);
+
+  /**
+   * Widths that are constructed at class initialisation by default.  These
+   * are the widths that <code>Board</code> and <code>Cells</code> use.
+   */
+  private static final String DEFAULT_WARMUP = (Cells.N + 1) + "," + (Cells.N * Cells.N);
+
+  private static final AtomicReferenceArray<BitvectorFactory> FACTORIES =
+      new AtomicReferenceArray<BitvectorFactory>(100);
+
+  static {
+    String widths = System.getProperty(WARMUP_PROPERTY, DEFAULT_WARMUP).trim();
+    if(widths.length() > 0) {
+      for(String width : widths.split(",")) {
+        getFactory(Integer.parseInt(width.trim()));
+      }
+    }
+  }
+
+  /**
+   * Get the factory for bitvectors of the given width.  Safe to call from
+   * multiple threads, every caller sees the same factory instance.
+   */
   public static BitvectorFactory getFactory(int numBits)
   {
-    BitvectorFactory factory = FACTORIES[numBits];
+    BitvectorFactory factory = FACTORIES.get(numBits);
+    if(factory == null) {
+      factory = createFactory(numBits);
+    }
+
+    return factory;
+  }
+
+  /**
+   * Construct the factories for the given widths ahead of time, so that the
+   * cost of building their tables isn't paid by the first board.
+   */
+  public static void warmUp(int... widths)
+  {
+    for(int width : widths) {
+      getFactory(width);
+    }
+  }
+
+  private static synchronized BitvectorFactory createFactory(int numBits)
+  {
+    // Another thread may have won the race while we waited for the lock
+    BitvectorFactory factory = FACTORIES.get(numBits);
     if(factory == null) {
-      FACTORIES[numBits] = factory = newFactory(numBits);
+      factory = newFactory(numBits);
+      FACTORIES.set(numBits, factory);
     }
 
     return factory;
@@ -20,7 +85,7 @@ public final class Bitvectors
   private static BitvectorFactory newFactory(int numBits)
   {
     if(numBits < 20) {
-      return new PrecomputedBitvectorFactory(numBits);
+      return new PrecomputedBitvectorFactory(numBits, COMPACT);
     }
 
     if(numBits == 81) {
@@ -1,176 +1,156 @@
 package brandon.inference;
 
-import java.text.MessageFormat;
-import java.util.Arrays;
-
 /**
  * Representation of a sudoku board.
+ *
+ * The possibilities, the trail, the buckets and naked and hidden singles are
+ * those of a 9 x 9 <code>brandon.grid.Board</code>, the same board core the
+ * grid engine uses.  This board adds a view of the possibilities as value
+ * bitvectors for the rules and branching strategies, and counts the core's
+ * work in the stats of the solver that owns it.
  */
 public final class Board
 {
   /**
-   * Factory for creating value (0-Cells.N) bitvectors.
+   * Factory for creating value (0-Cells.N) bitvectors.  Values are narrow
+   * enough that it's always a precomputed factory, whose encodings are the
+   * masks the core keeps.
    */
-  private final BitvectorFactory factory;
+  private static final PrecomputedBitvectorFactory FACTORY =
+      (PrecomputedBitvectorFactory) Bitvectors.getFactory(Cells.N + 1);
+
+  private final brandon.grid.Board core;
 
   /**
-   * Possibilities for every cell in the board.
+   * Counters of the solver that owns this board, may be null.
    */
-  private final Bitvector[] possibilities;
+  private final Stats stats;
 
   /**
-   * Version of the board.  Incremented each time the board is mutated.
+   * The core's counters as of the last time they were added to the stats.
    */
-  private int version;
+  private long counted_propagations;
+  private long counted_contradictions;
 
-  private Board(boolean fill)
+  private Board(brandon.grid.Board core, Stats stats)
   {
-    factory = Bitvectors.getFactory(Cells.N+1);
-    possibilities = new Bitvector[Cells.NUM_CELLS];
-
-    if(fill) {
-      Bitvector allValues = factory.getAll().subtract(factory.encode(0));
-      
-      Arrays.fill(possibilities, allValues);
-      version = 0;
-    }
+    this.core = core;
+    this.stats = stats;
   }
 
+  /**
+   * Set the value of a cell, and propagate it to every naked single that it
+   * creates.  Returns false on a contradiction, in which case the board is
+   * left part way through the propagation.
+   */
   public final boolean setValue(int id, int value)
   {
     assert 0 <= id && id < Cells.NUM_CELLS : id;
     assert 1 <= value && value <= Cells.N : value;
 
-    Bitvector valueMask = factory.encode(value);
-
-    // Check to see if setting the specified value would cause a contradiction
-    if(possibilities[id].intersect(valueMask) == factory.getNone()) {
-      return false;
-    }
-
-    // Set the value of the specified cell
-    possibilities[id] = valueMask;
-
-    // Go to each neighboring cell and update their possibility lists,
-    // detecting any contradictions
-    Bitvector neighbors = Cells.getNeighbors(id);
-    for(int neighborId : neighbors.getBits()) {
-      Bitvector oldPossibilityMask = possibilities[neighborId];
-      Bitvector possibilityMask = oldPossibilityMask.subtract(valueMask);
-
-      // Nothing was changed
-      if(oldPossibilityMask == possibilityMask) {
-        continue;
-      }
-
-      // Contradiction
-      if(possibilityMask == factory.getNone()) {
-        return false;
-      }
-
-      possibilities[neighborId] = possibilityMask;
+    boolean consistent = core.setValue(id, value);
+    count();
+    return consistent;
+  }
 
-      if(possibilityMask.getBitCount() == 1) {
-        if(!setValue(neighborId, possibilityMask.getBit(0))) {
-          return false;
-        }
-      }
+  /**
+   * Add the work the core has done since the last call to the stats.
+   */
+  private void count()
+  {
+    if(Stats.ENABLED && stats != null) {
+      stats.propagations += core.getPropagations() - counted_propagations;
+      stats.contradictions += core.getContradictions() - counted_contradictions;
+      counted_propagations = core.getPropagations();
+      counted_contradictions = core.getContradictions();
     }
+  }
 
-    version++;
-    return true;
+  /**
+   * Copy the groups with a cell whose possibilities have changed since the
+   * last call into the given set, and start recording changes afresh.
+   * Undoing changes marks their groups too.
+   */
+  public final brandon.grid.CellSet takeDirtyGroups(brandon.grid.CellSet groups)
+  {
+    return core.takeDirtyUnits(groups);
   }
 
-/*
-  public final boolean removePossibilities(int id, int[] values)
+  /**
+   * Set every hidden single in the given groups.  Returns how many cells
+   * were set, or -1 on a contradiction.
+   */
+  public final int setHiddenSingles(brandon.grid.CellSet groups)
   {
-    Bitvector possibilityMask = possibilities[id].subtract(factory.encode(values));
+    int singles = core.setHiddenSingles(groups);
+    count();
+    return singles;
+  }
 
-    if(possibilityMask == factory.getNone()) {
-      return false;
-    }
+  /**
+   * Mark the current state of the board so that it can be returned to with
+   * <code>undo</code>.  Only boards that keep a trail can be marked.
+   */
+  public final int mark()
+  {
+    return core.mark();
+  }
 
-    possibilities[id] = possibilityMask;
-    
-    if(possibilityMask.getBitCount() == 1) {
-      if(!setValue(id, possibilityMask.getBits()[0])) {
-        return false;
-      }
-    }
+  /**
+   * Undo every change made since the given mark.
+   */
+  public final void undo(int mark)
+  {
+    core.undo(mark);
+  }
 
-    version++;
-    return true;
+  /**
+   * Remove values from the possibilities of a cell, setting the cell if only
+   * one possibility is left.  Returns false on a contradiction.
+   */
+  public final boolean removePossibilities(int id, Bitvector values)
+  {
+    boolean consistent = core.removePossibilities(id, FACTORY.getEncoding(values));
+    count();
+    return consistent;
   }
-*/
 
+  /**
+   * Find a cell with the fewest possibilities that hasn't been fixed yet, or
+   * -1 if every cell has been fixed.  Ties go to the lowest cell id.
+   */
   public final int getCellToSearch()
   {
-    int bestCount = Integer.MAX_VALUE;
-    int bestId = -1;
-
-    for(int id = 0; id < Cells.NUM_CELLS; id++) {
-      int count = possibilities[id].getBitCount();
-      if(1 < count && count < bestCount) {
-        bestCount = count;
-        bestId = id;
-
-        if(bestCount == 2) {
-          break;
-        }
-      }
-    }
+    return core.getCellToSearch();
+  }
 
-    return bestId;
+  /**
+   * The cells that have the given number of possibilities.  Callers must not
+   * modify the returned set.
+   */
+  public final brandon.grid.CellSet getCellsWithCount(int count)
+  {
+    return core.getCellsWithCount(count);
   }
 
   public final int[] getPossibleValues(int id)
   {
-    return possibilities[id].getBits();
+    return FACTORY.decode(core.getPossibilities(id)).getBits();
+  }
+
+  public final Bitvector getPossibilities(int id)
+  {
+    return FACTORY.decode(core.getPossibilities(id));
   }
 
   public final int getVersion()
   {
-    return version;
+    return core.getVersion();
   }
 
   public final String toString()
   {
-    String rowFormat = " {0} {1} {2} | {3} {4} {5} | {6} {7} {8} ";
-    String spacer = "-------------------------------+-------------------------------+-------------------------------";
-
-    String[] formats = new String[Cells.N];
-    for(int i = 0; i < Cells.N; i++) {
-      String[] possibilityString = new String[Cells.N];
-
-      for(int j = 0; j < Cells.N; j++) {
-        int[] possibleValues = getPossibleValues(i * Cells.N + j);
-
-        possibilityString[j] = "";
-
-        for(int k = 1; k <= Cells.N; k++) {
-          if(Arrays.binarySearch(possibleValues, k) >= 0) {
-            possibilityString[j] += Integer.toString(k);
-          } else {
-            possibilityString[j] += ".";
-          }
-        }
-      }
-
-      formats[i] = MessageFormat.format(rowFormat, (Object[]) possibilityString);
-    }
-
-    return
-        formats[0] + "\n" +
-        formats[1] + "\n" +
-        formats[2] + "\n" +
-        spacer + "\n" +
-        formats[3] + "\n" +
-        formats[4] + "\n" +
-        formats[5] + "\n" +
-        spacer + "\n" +
-        formats[6] + "\n" +
-        formats[7] + "\n" +
-        formats[8] + "\n";
+    return core.toString();
   }
 
   /**
@@ -178,7 +158,18 @@ public final class Board
    */
   public static Board fromArray(int[][] array)
   {
-    Board board = new Board(true);
+    return fromArray(array, null);
+  }
+
+  /**
+   * Construct a board from an array, counting the work done on it (and on
+   * any copies of it) in the given stats.  The board keeps a trail, so it can
+   * be backtracked with <code>mark</code> and <code>undo</code>.  Returns
+   * null if the givens contradict each other.
+   */
+  public static Board fromArray(int[][] array, Stats stats)
+  {
+    Board board = new Board(brandon.grid.Board.empty(Cells.GEOMETRY), stats);
     assert array.length == Cells.N;
 
     for(int i = 0; i < Cells.N; i++) {
@@ -186,8 +177,8 @@ public final class Board
 
       for(int j = 0; j < Cells.N; j++) {
         int value = array[i][j];
-        if(value != sudoku.Solver.MISSING) {
-          board.setValue(i * Cells.N + j, value);
+        if(value != sudoku.Solver.MISSING && !board.setValue(i * Cells.N + j, value)) {
+          return null;
         }
       }
     }
@@ -196,29 +187,47 @@ public final class Board
   }
 
   /**
-   * Construct a board from another board.
+   * Construct a board from a flat buffer of cells, counting the work done on
+   * it (and on any copies of it) in the given stats.  The board keeps a
+   * trail, so it can be backtracked with <code>mark</code> and
+   * <code>undo</code>.  Returns null if the givens contradict each other.
    */
-  public static Board fromBoard(Board other)
+  public static Board fromFlat(byte[] cells, int offset, Stats stats)
   {
-    Board board = new Board(false);
-    board.version = other.version;    
-    System.arraycopy(other.possibilities, 0, board.possibilities, 0, Cells.NUM_CELLS);
+    Board board = new Board(brandon.grid.Board.empty(Cells.GEOMETRY), stats);
+
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      int value = cells[offset + id];
+      if(value != sudoku.Solver.MISSING && !board.setValue(id, value)) {
+        return null;
+      }
+    }
+
     return board;
   }
 
+  /**
+   * Construct a board from another board.  The copy doesn't keep a trail.
+   */
+  public static Board fromBoard(Board other)
+  {
+    return new Board(brandon.grid.Board.fromBoard(other.core), other.stats);
+  }
+
   /**
    * Copy the data in the specified board into the provided array.
    */
   public static void toArray(Board board, int[][] array)
   {
     assert array.length == Cells.N;
+    brandon.grid.Board.toArray(board.core, array);
+  }
 
-    for(int id = 0; id < Cells.NUM_CELLS; id++) {
-      assert array[id].length == Cells.N;
-      assert board.possibilities[id].getBitCount() == 1;
-
-      int value = board.possibilities[id].getBit(0);
-      array[id/ Cells.N][id% Cells.N] = value;
-    }
+  /**
+   * Copy the data in the specified board into a flat buffer of cells.
+   */
+  public static void toFlat(Board board, byte[] cells, int offset)
+  {
+    brandon.grid.Board.toFlat(board.core, cells, offset);
   }
 }
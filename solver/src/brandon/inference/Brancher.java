@@ -0,0 +1,213 @@
+package brandon.inference;
+
+/**
+ * Implementation of the strategies in <code>Branching</code>.
+ *
+ * A branch is a list of alternatives that between them cover every solution
+ * of the board, either every possible value of one cell or every place one
+ * value can go in a group.  Alternatives are handed back as parallel arrays of
+ * cell ids and values.
+ *
+ * Holds scratch space for a single solve, so an instance must not be shared
+ * between threads.
+ */
+final class Brancher
+{
+  private final Branching branching;
+  private final boolean lcv;
+  private final BitvectorFactory factory = Bitvectors.getFactory(Cells.N + 1);
+
+  private final CellSet unfixed = new CellSet();
+  private final CellSet scratch = new CellSet();
+  private final CellSet[] places = new CellSet[Cells.N + 1];
+  private final int[] scores = new int[Cells.N];
+
+  Brancher(Branching branching, boolean lcv)
+  {
+    this.branching = branching;
+    this.lcv = lcv;
+
+    for(int value = 0; value <= Cells.N; value++) {
+      places[value] = new CellSet();
+    }
+  }
+
+  /**
+   * Fill in the alternatives to branch on and return how many there are, or
+   * 0 if every cell has been fixed.
+   */
+  final int branch(Board board, int[] ids, int[] values)
+  {
+    int count = getFewestPossibilities(board);
+    if(count == -1) {
+      return 0;
+    }
+
+    switch(branching) {
+      case MRV:
+        return branchOnCell(board, board.getCellToSearch(), ids, values);
+      case DEGREE:
+        return branchOnCell(board, getMostConstrainedCell(board, count), ids, values);
+      case UNIT:
+        int places = branchOnUnit(board, count, ids, values);
+        if(places > 0) {
+          return places;
+        }
+        return branchOnCell(board, board.getCellToSearch(), ids, values);
+      default:
+        throw new AssertionError(branching);
+    }
+  }
+
+  /**
+   * The fewest possibilities any cell that hasn't been fixed has, or -1 if
+   * every cell has been fixed.
+   */
+  private static int getFewestPossibilities(Board board)
+  {
+    for(int count = 2; count <= Cells.N; count++) {
+      if(!board.getCellsWithCount(count).isEmpty()) {
+        return count;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Among the cells with the given (fewest) number of possibilities, find the
+   * one with the most neighbors that haven't been fixed.
+   */
+  private int getMostConstrainedCell(Board board, int count)
+  {
+    unfixed.clear();
+    for(int i = count; i <= Cells.N; i++) {
+      brandon.grid.CellSet cells = board.getCellsWithCount(i);
+      for(int id = cells.first(); id != -1; id = cells.next(id)) {
+        unfixed.add(id);
+      }
+    }
+
+    brandon.grid.CellSet candidates = board.getCellsWithCount(count);
+    int bestId = -1;
+    int bestDegree = -1;
+
+    for(int id = candidates.first(); id != -1; id = candidates.next(id)) {
+      int degree = scratch.setIntersection(Cells.getNeighborCells(id), unfixed).size();
+      if(degree > bestDegree) {
+        bestDegree = degree;
+        bestId = id;
+      }
+    }
+
+    return bestId;
+  }
+
+  private int branchOnCell(Board board, int id, int[] ids, int[] values)
+  {
+    int[] possible = board.getPossibleValues(id);
+    for(int i = 0; i < possible.length; i++) {
+      ids[i] = id;
+      values[i] = possible[i];
+    }
+
+    if(lcv) {
+      orderLeastConstraining(board, id, values, possible.length);
+    }
+
+    return possible.length;
+  }
+
+  /**
+   * Sort the values of a cell by how many of its neighbors could also take
+   * them, fewest first, keeping ties in order.
+   */
+  private void orderLeastConstraining(Board board, int id, int[] values, int count)
+  {
+    int[] neighbors = Cells.getNeighborIds(id);
+    for(int i = 0; i < count; i++) {
+      Bitvector valueMask = factory.encode(values[i]);
+
+      int score = 0;
+      for(int neighborId : neighbors) {
+        if(board.getPossibilities(neighborId).intersect(valueMask) != factory.getNone()) {
+          score++;
+        }
+      }
+      scores[i] = score;
+    }
+
+    for(int i = 1; i < count; i++) {
+      int value = values[i];
+      int score = scores[i];
+
+      int j = i - 1;
+      while(j >= 0 && scores[j] > score) {
+        values[j + 1] = values[j];
+        scores[j + 1] = scores[j];
+        j--;
+      }
+      values[j + 1] = value;
+      scores[j + 1] = score;
+    }
+  }
+
+  /**
+   * Find the value and group where the value has the fewest places, and if
+   * that's fewer than the given number of possibilities of the best cell fill
+   * in those places as the alternatives.  Returns 0 if no group beats the
+   * cell.
+   */
+  private int branchOnUnit(Board board, int count, int[] ids, int[] values)
+  {
+    // No group can have fewer than two places for a value once inference is done
+    if(count <= 2) {
+      return 0;
+    }
+
+    for(int value = 1; value <= Cells.N; value++) {
+      places[value].clear();
+    }
+
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      int[] possible = board.getPossibleValues(id);
+      if(possible.length > 1) {
+        for(int value : possible) {
+          places[value].add(id);
+        }
+      }
+    }
+
+    int bestSize = count;
+    int bestGroup = -1;
+    int bestValue = -1;
+
+    for(int groupid = 0; groupid < Cells.NUM_GROUPS && bestSize > 2; groupid++) {
+      CellSet group = Cells.getGroupCells(groupid);
+
+      for(int value = 1; value <= Cells.N; value++) {
+        int size = scratch.setIntersection(places[value], group).size();
+        if(1 < size && size < bestSize) {
+          bestSize = size;
+          bestGroup = groupid;
+          bestValue = value;
+        }
+      }
+    }
+
+    if(bestGroup == -1) {
+      return 0;
+    }
+
+    scratch.setIntersection(places[bestValue], Cells.getGroupCells(bestGroup));
+
+    int i = 0;
+    for(int id = scratch.first(); id != -1; id = scratch.next(id)) {
+      ids[i] = id;
+      values[i] = bestValue;
+      i++;
+    }
+
+    return i;
+  }
+}
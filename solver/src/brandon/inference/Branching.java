@@ -0,0 +1,77 @@
+package brandon.inference;
+
+/**
+ * Strategies for choosing what the search branches on when inference gets
+ * stuck.
+ *
+ * The strategy is chosen with
+ * <code>-Dbrandon.inference.branching=mrv|degree|unit</code>, and values are
+ * tried least constraining first with
+ * <code>-Dbrandon.inference.lcv=true</code>.  By default the search branches
+ * on the first cell with the fewest possibilities and tries its values in
+ * order.
+ */
+public enum Branching
+{
+  /**
+   * Branch on the cell with the fewest possibilities (minimum remaining
+   * values), ties going to the lowest cell id.
+   */
+  MRV("mrv"),
+
+  /**
+   * Branch on a cell with the fewest possibilities, ties going to the cell
+   * with the most neighbors that haven't been fixed yet.
+   */
+  DEGREE("degree"),
+
+  /**
+   * Branch on the places a value can go in the group where it has the fewest
+   * places, unless a cell has even fewer possibilities.
+   */
+  UNIT("unit");
+
+  /**
+   * System property with the name of the strategy to use.
+   */
+  public static final String PROPERTY = "brandon.inference.branching";
+
+  /**
+   * System property that, when true, tries the values of a cell in order of
+   * how few of its neighbors could also take them.
+   */
+  public static final String LCV_PROPERTY = "brandon.inference.lcv";
+
+  /**
+   * The strategy chosen by <code>PROPERTY</code>.
+   */
+  static final Branching SELECTED = forKey(System.getProperty(PROPERTY, "mrv").trim());
+
+  static final boolean LCV = Boolean.getBoolean(LCV_PROPERTY);
+
+  private final String key;
+
+  private Branching(String key)
+  {
+    this.key = key;
+  }
+
+  /**
+   * Name of the strategy in <code>PROPERTY</code>.
+   */
+  public String getKey()
+  {
+    return key;
+  }
+
+  public static Branching forKey(String key)
+  {
+    for(Branching branching : values()) {
+      if(branching.key.equals(key)) {
+        return branching;
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown branching strategy: " + key);
+  }
+}
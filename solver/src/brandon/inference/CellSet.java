@@ -0,0 +1,289 @@
+package brandon.inference;
+
+/**
+ * Mutable set of cell ids (0-80) packed into two longs.  None of the
+ * operations allocate, so a set can be reused across an entire solve.
+ *
+ * Iterate over the members without allocating with:
+ * <pre>
+ *   for(int id = set.first(); id != -1; id = set.next(id)) { ... }
+ * </pre>
+ */
+public final class CellSet
+{
+  /**
+   * Number of bits held in the low word.
+   */
+  private static final int LO_BITS = 64;
+
+  /**
+   * Mask of the bits in the high word that are valid cell ids.
+   */
+  private static final long HI_MASK = (1L << (Cells.NUM_CELLS - LO_BITS)) - 1;
+
+  /**
+   * Cell ids 0-63.
+   */
+  private long lo;
+
+  /**
+   * Cell ids 64-80.
+   */
+  private long hi;
+
+  public CellSet()
+  {
+  }
+
+  public CellSet(CellSet other)
+  {
+    lo = other.lo;
+    hi = other.hi;
+  }
+
+  /**
+   * Add a cell to the set.
+   */
+  public CellSet add(int id)
+  {
+    assert 0 <= id && id < Cells.NUM_CELLS : id;
+
+    if(id < LO_BITS) {
+      lo |= 1L << id;
+    } else {
+      hi |= 1L << (id - LO_BITS);
+    }
+    return this;
+  }
+
+  /**
+   * Remove a cell from the set.
+   */
+  public CellSet remove(int id)
+  {
+    assert 0 <= id && id < Cells.NUM_CELLS : id;
+
+    if(id < LO_BITS) {
+      lo &= ~(1L << id);
+    } else {
+      hi &= ~(1L << (id - LO_BITS));
+    }
+    return this;
+  }
+
+  /**
+   * Determine whether a cell is in the set.
+   */
+  public boolean contains(int id)
+  {
+    assert 0 <= id && id < Cells.NUM_CELLS : id;
+
+    if(id < LO_BITS) {
+      return (lo & (1L << id)) != 0;
+    }
+    return (hi & (1L << (id - LO_BITS))) != 0;
+  }
+
+  /**
+   * Remove every cell from the set.
+   */
+  public CellSet clear()
+  {
+    lo = 0;
+    hi = 0;
+    return this;
+  }
+
+  /**
+   * Add every cell to the set.
+   */
+  public CellSet fill()
+  {
+    lo = -1L;
+    hi = HI_MASK;
+    return this;
+  }
+
+  /**
+   * Overwrite this set with the contents of another.
+   */
+  public CellSet set(CellSet that)
+  {
+    lo = that.lo;
+    hi = that.hi;
+    return this;
+  }
+
+  /**
+   * Keep only the cells that are also in the other set.
+   */
+  public CellSet intersect(CellSet that)
+  {
+    lo &= that.lo;
+    hi &= that.hi;
+    return this;
+  }
+
+  /**
+   * Add all of the cells that are in the other set.
+   */
+  public CellSet union(CellSet that)
+  {
+    lo |= that.lo;
+    hi |= that.hi;
+    return this;
+  }
+
+  /**
+   * Remove all of the cells that are in the other set.
+   */
+  public CellSet subtract(CellSet that)
+  {
+    lo &= ~that.lo;
+    hi &= ~that.hi;
+    return this;
+  }
+
+  /**
+   * Overwrite this set with the intersection of two sets.
+   */
+  public CellSet setIntersection(CellSet a, CellSet b)
+  {
+    lo = a.lo & b.lo;
+    hi = a.hi & b.hi;
+    return this;
+  }
+
+  /**
+   * Overwrite this set with the union of two sets.
+   */
+  public CellSet setUnion(CellSet a, CellSet b)
+  {
+    lo = a.lo | b.lo;
+    hi = a.hi | b.hi;
+    return this;
+  }
+
+  /**
+   * Overwrite this set with the cells in the first set that are not in the
+   * second.
+   */
+  public CellSet setDifference(CellSet a, CellSet b)
+  {
+    lo = a.lo & ~b.lo;
+    hi = a.hi & ~b.hi;
+    return this;
+  }
+
+  /**
+   * Determine whether this set shares any cells with the other set.
+   */
+  public boolean intersects(CellSet that)
+  {
+    return (lo & that.lo) != 0 || (hi & that.hi) != 0;
+  }
+
+  /**
+   * Determine whether every cell in the other set is also in this set.
+   */
+  public boolean containsAll(CellSet that)
+  {
+    return (that.lo & ~lo) == 0 && (that.hi & ~hi) == 0;
+  }
+
+  public boolean isEmpty()
+  {
+    return lo == 0 && hi == 0;
+  }
+
+  /**
+   * How many cells are in the set.
+   */
+  public int size()
+  {
+    return Long.bitCount(lo) + Long.bitCount(hi);
+  }
+
+  /**
+   * Determine the smallest cell id in the set, or -1 if the set is empty.
+   */
+  public int first()
+  {
+    if(lo != 0) {
+      return Long.numberOfTrailingZeros(lo);
+    }
+    if(hi != 0) {
+      return LO_BITS + Long.numberOfTrailingZeros(hi);
+    }
+    return -1;
+  }
+
+  /**
+   * Determine the smallest cell id in the set that is greater than the given
+   * id, or -1 if there isn't one.
+   */
+  public int next(int id)
+  {
+    int from = id + 1;
+    if(from < LO_BITS) {
+      long word = lo & (-1L << from);
+      if(word != 0) {
+        return Long.numberOfTrailingZeros(word);
+      }
+      from = LO_BITS;
+    }
+
+    long word = hi & (-1L << (from - LO_BITS));
+    if(word != 0) {
+      return LO_BITS + Long.numberOfTrailingZeros(word);
+    }
+    return -1;
+  }
+
+  /**
+   * Low word of the set (cell ids 0-63).
+   */
+  public long getLow()
+  {
+    return lo;
+  }
+
+  /**
+   * High word of the set (cell ids 64-80).
+   */
+  public long getHigh()
+  {
+    return hi;
+  }
+
+  @Override
+  public boolean equals(Object o)
+  {
+    if(!(o instanceof CellSet)) {
+      return false;
+    }
+
+    CellSet that = (CellSet) o;
+    return lo == that.lo && hi == that.hi;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    long h = lo * 31 + hi;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder("{");
+    for(int id = first(); id != -1; id = next(id)) {
+      if(sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(id);
+    }
+    return sb.append('}').toString();
+  }
+}
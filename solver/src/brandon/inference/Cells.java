@@ -1,10 +1,13 @@
 package brandon.inference;
 
-import java.util.HashSet;
-import java.util.Set;
+import brandon.grid.Geometry;
 
 /**
  * Helper class to keep track of cell and group relationships.
+ *
+ * The tables are built from the 9 x 9 <code>brandon.grid.Geometry</code> that
+ * the board core uses, so groups are numbered the same way as its units:
+ * groups 0 to N-1 are rows, N to 2N-1 are columns and 2N to 3N-1 are boxes.
  */
 public final class Cells
 {
@@ -24,57 +27,42 @@ public final class Cells
   public static final int NUM_GROUPS = N * 3;
 
   /**
-   * Mapping of the groups a given cell is in.
+   * Geometry of the board, shared with <code>brandon.grid</code>.
    */
-  private static final int[][] GROUPS = new int[NUM_CELLS][3];
-  static {
-    for(int id = 0; id < NUM_CELLS; id++) {
-      GROUPS[id][0] = id % 9;
-      GROUPS[id][1] = 9 + id / 9;
-      GROUPS[id][2] = 18 + 3 * (id / 27) + (id / 3) % 3;
-    }
-  }
+  static final Geometry GEOMETRY = Geometry.forSize(N);
 
   /**
    * Mapping of all of the neighbors of a given cell.
    */
   private static final Bitvector[] NEIGHBORS = new Bitvector[NUM_CELLS];
+
+  /**
+   * Mapping of all of the neighbors of a given cell as a cell set.
+   */
+  private static final CellSet[] NEIGHBOR_CELLS = new CellSet[NUM_CELLS];
   static {
-    for(int id = 0; id < NUM_CELLS; id++) {
-      Set<Integer> neighbors = new HashSet<Integer>();
-      for(int i = 0; i < GROUPS[id].length; i++) {
-        int group = GROUPS[id][i];
-
-        for(int j = 0; j < NUM_CELLS; j++) {
-          for(int k = 0; k < GROUPS[j].length; k++) {
-            if(GROUPS[j][k] == group) {
-              neighbors.add(j);
-            }
-          }
-        }
-      }
-      neighbors.remove(id);
+    BitvectorFactory factory = Bitvectors.getFactory(NUM_CELLS);
 
-      int[] bits = new int[neighbors.size()];
-      int count = 0;
-      for(Integer bit : neighbors) {
-        bits[count++] = bit;
+    for(int id = 0; id < NUM_CELLS; id++) {
+      CellSet neighbors = new CellSet();
+      for(int neighborId : GEOMETRY.getPeers(id)) {
+        neighbors.add(neighborId);
       }
 
-      BitvectorFactory factory = Bitvectors.getFactory(NUM_CELLS);
-      NEIGHBORS[id] = factory.encode(bits);
+      NEIGHBORS[id] = factory.encode(GEOMETRY.getPeers(id));
+      NEIGHBOR_CELLS[id] = neighbors;
     }
   }
 
   /**
-   * Mapping of which cells are in a given group.
+   * Mapping of which cells are in a given group as a cell set.
    */
-  private static final int[][] GROUP_CELLS = new int[NUM_GROUPS][N];
+  private static final CellSet[] GROUP_SETS = new CellSet[NUM_GROUPS];
   static {
-    int[] indices = new int[NUM_GROUPS];
-    for(int id = 0; id < NUM_CELLS; id++) {
-      for(int groupid : GROUPS[id]) {
-        GROUP_CELLS[groupid][indices[groupid]++] = id;
+    for(int groupid = 0; groupid < NUM_GROUPS; groupid++) {
+      GROUP_SETS[groupid] = new CellSet();
+      for(int id : GEOMETRY.getUnitMembers(groupid)) {
+        GROUP_SETS[groupid].add(id);
       }
     }
   }
@@ -89,12 +77,65 @@ public final class Cells
   }
 
   /**
-   * Determine all of the members in a given group.
+   * Determine all of the neighbors of a given cell as a list of ids.  Callers
+   * must not modify the returned array.
+   */
+  public static int[] getNeighborIds(int id)
+  {
+    return GEOMETRY.getPeers(id);
+  }
+
+  /**
+   * Determine all of the neighbors of a given cell as a cell set.  Callers
+   * must not modify the returned set.
+   */
+  public static CellSet getNeighborCells(int id)
+  {
+    assert 0 <= id && id < NUM_CELLS;
+    return NEIGHBOR_CELLS[id];
+  }
+
+  /**
+   * Determine all of the members in a given group.  Callers must not modify
+   * the returned array.
    */
   public static int[] getGroupMembers(int groupid)
+  {
+    return GEOMETRY.getUnitMembers(groupid);
+  }
+
+  /**
+   * Determine all of the members in a given group as a cell set.  Callers
+   * must not modify the returned set.
+   */
+  public static CellSet getGroupCells(int groupid)
   {
     assert 0 <= groupid && groupid < NUM_GROUPS;
-    return GROUP_CELLS[groupid];
+    return GROUP_SETS[groupid];
+  }
+
+  /**
+   * Determine the column group a cell is in.
+   */
+  public static int getColumn(int id)
+  {
+    return GEOMETRY.getUnits(id)[1];
+  }
+
+  /**
+   * Determine the row group a cell is in.
+   */
+  public static int getRow(int id)
+  {
+    return GEOMETRY.getUnits(id)[0];
+  }
+
+  /**
+   * Determine the box group a cell is in.
+   */
+  public static int getBox(int id)
+  {
+    return GEOMETRY.getUnits(id)[2];
   }
 
   /**
@@ -1,67 +1,69 @@
 package brandon.inference;
 
+/**
+ * Factory for 81 bit bitvectors (one bit per cell).  The bits are packed into
+ * two longs, so operations are a couple of word instructions.  Single bit
+ * vectors are cached, and operations whose result is equal to one of their
+ * operands return that operand instead of allocating.  The list of set bits
+ * is only computed if somebody asks for it.
+ *
+ * Hot loops that need a mutable set of cells should use <code>CellSet</code>,
+ * which never allocates.
+ */
 public class LongBitvectorFactory implements BitvectorFactory
 {
-  private static final BitvectorFactory FACTORY = Bitvectors.getFactory(9);
-  private static final int[] OFFSETS = { 0, 9, 18, 27, 36, 45, 54, 63, 72 };
+  private static final int WIDTH = 81;
+  private static final int LO_BITS = 64;
+  private static final long HI_MASK = (1L << (WIDTH - LO_BITS)) - 1;
 
   private final LongBitvector none;
   private final LongBitvector all;
+  private final LongBitvector[] singles;
 
-  public LongBitvectorFactory()
+  LongBitvectorFactory()
   {
-    none = new LongBitvector(new Bitvector[] {
-        FACTORY.getNone(),
-        FACTORY.getNone(),
-        FACTORY.getNone(),
-        FACTORY.getNone(),
-        FACTORY.getNone(),
-        FACTORY.getNone(),
-        FACTORY.getNone(),
-        FACTORY.getNone(),
-        FACTORY.getNone(),
-    });
-
-    all = new LongBitvector(new Bitvector[] {
-        FACTORY.getAll(),
-        FACTORY.getAll(),
-        FACTORY.getAll(),
-        FACTORY.getAll(),
-        FACTORY.getAll(),
-        FACTORY.getAll(),
-        FACTORY.getAll(),
-        FACTORY.getAll(),
-        FACTORY.getAll(),
-    });
+    none = new LongBitvector(0, 0);
+    all = new LongBitvector(-1L, HI_MASK);
+
+    singles = new LongBitvector[WIDTH];
+    for(int bit = 0; bit < WIDTH; bit++) {
+      singles[bit] = (bit < LO_BITS)
+          ? new LongBitvector(1L << bit, 0)
+          : new LongBitvector(0, 1L << (bit - LO_BITS));
+    }
   }
 
   public Bitvector encode(int bit)
   {
-    int div = bit / 9;
-    int mod = bit % 9;
-
-    Bitvector[] vs = new Bitvector[9];
-    vs[0] = (div == 0) ? FACTORY.encode(mod) : FACTORY.getNone();
-    vs[1] = (div == 1) ? FACTORY.encode(mod) : FACTORY.getNone();
-    vs[2] = (div == 2) ? FACTORY.encode(mod) : FACTORY.getNone();
-    vs[3] = (div == 3) ? FACTORY.encode(mod) : FACTORY.getNone();
-    vs[4] = (div == 4) ? FACTORY.encode(mod) : FACTORY.getNone();
-    vs[5] = (div == 5) ? FACTORY.encode(mod) : FACTORY.getNone();
-    vs[6] = (div == 6) ? FACTORY.encode(mod) : FACTORY.getNone();
-    vs[7] = (div == 7) ? FACTORY.encode(mod) : FACTORY.getNone();
-    vs[8] = (div == 8) ? FACTORY.encode(mod) : FACTORY.getNone();
-
-    return new LongBitvector(vs);
+    assert 0 <= bit && bit < WIDTH : bit;
+    return singles[bit];
   }
 
   public Bitvector encode(int[] bits)
   {
     assert bits.length != 0;
-    Bitvector union = encode(bits[0]);
-    for(int i = 1; i < bits.length; i++) {
-      union = union.union(encode(bits[i]));
+
+    long lo = 0;
+    long hi = 0;
+    for(int bit : bits) {
+      assert 0 <= bit && bit < WIDTH : bit;
+
+      if(bit < LO_BITS) {
+        lo |= 1L << bit;
+      } else {
+        hi |= 1L << (bit - LO_BITS);
+      }
     }
-    return union;
+
+    return valueOf(lo, hi);
+  }
+
+  /**
+   * Encode the cells of a cell set into a bitvector.
+   */
+  public Bitvector encode(CellSet cells)
+  {
+    return valueOf(cells.getLow(), cells.getHigh());
   }
 
   public Bitvector getNone()
@@ -74,114 +76,145 @@ public class LongBitvectorFactory implements BitvectorFactory
     return all;
   }
 
-  private final class LongBitvector implements Bitvector
+  /**
+   * Find or create the bitvector with the given words.
+   */
+  private LongBitvector valueOf(long lo, long hi)
   {
-    private final Bitvector[] vectors;
-    private final int[] bits;
-    private final int width;
+    if(lo == 0 && hi == 0) {
+      return none;
+    }
 
-    public LongBitvector(Bitvector[] vs)
-    {
-      vectors = vs;
+    if(lo == -1L && hi == HI_MASK) {
+      return all;
+    }
 
-      bits = new int[vs[0].getBitCount() + vs[1].getBitCount() + vs[2].getBitCount() +
-          vs[3].getBitCount() + vs[4].getBitCount() + vs[5].getBitCount() +
-          vs[6].getBitCount() + vs[7].getBitCount() + vs[8].getBitCount()];
+    if(hi == 0 && (lo & (lo - 1)) == 0) {
+      return singles[Long.numberOfTrailingZeros(lo)];
+    }
 
-      width = vs[0].getWidth() + vs[1].getWidth() + vs[2].getWidth() +
-          vs[3].getWidth() + vs[4].getWidth() + vs[5].getWidth() +
-          vs[6].getWidth() + vs[7].getWidth() + vs[8].getWidth();
+    if(lo == 0 && (hi & (hi - 1)) == 0) {
+      return singles[LO_BITS + Long.numberOfTrailingZeros(hi)];
+    }
 
-      int count = 0;
-      for(int i = 0; i < vs.length; i++) {
-        Bitvector v = vs[i];
+    return new LongBitvector(lo, hi);
+  }
 
-        for(int bit : v.getBits()) {
-          bits[count++] = OFFSETS[i] + bit;
-        }
-      }
+  private final class LongBitvector implements Bitvector
+  {
+    private final long lo;
+    private final long hi;
+
+    /**
+     * Which bits are set, computed on first use.  Volatile so that a vector
+     * shared between threads is never seen with a partially filled array.
+     */
+    private volatile int[] bits;
+
+    public LongBitvector(long lo, long hi)
+    {
+      this.lo = lo;
+      this.hi = hi;
     }
 
     public int getWidth()
     {
-      return width;
+      return WIDTH;
     }
 
     public int[] getBits()
     {
-      return bits;
+      int[] result = bits;
+      if(result == null) {
+        result = new int[getBitCount()];
+
+        int count = 0;
+        for(long word = lo; word != 0; word &= word - 1) {
+          result[count++] = Long.numberOfTrailingZeros(word);
+        }
+        for(long word = hi; word != 0; word &= word - 1) {
+          result[count++] = LO_BITS + Long.numberOfTrailingZeros(word);
+        }
+
+        bits = result;
+      }
+
+      return result;
     }
 
     public int getBit(int i)
     {
-      return bits[i];
+      assert 0 <= i && i < getBitCount() : i;
+
+      int loCount = Long.bitCount(lo);
+      if(i < loCount) {
+        return nthBit(lo, i);
+      }
+      return LO_BITS + nthBit(hi, i - loCount);
     }
 
     public int getBitCount()
     {
-      return bits.length;
+      return Long.bitCount(lo) + Long.bitCount(hi);
     }
 
     public Bitvector intersect(Bitvector b)
     {
       LongBitvector that = cast(b);
-      return new LongBitvector(new Bitvector[] {
-          vectors[0].intersect(that.vectors[0]),
-          vectors[1].intersect(that.vectors[1]),
-          vectors[2].intersect(that.vectors[2]),
-          vectors[3].intersect(that.vectors[3]),
-          vectors[4].intersect(that.vectors[4]),
-          vectors[5].intersect(that.vectors[5]),
-          vectors[6].intersect(that.vectors[6]),
-          vectors[7].intersect(that.vectors[7]),
-          vectors[8].intersect(that.vectors[8]),
-      });
+      long l = lo & that.lo;
+      long h = hi & that.hi;
+
+      if(l == lo && h == hi) {
+        return this;
+      }
+      if(l == that.lo && h == that.hi) {
+        return that;
+      }
+      return valueOf(l, h);
     }
 
     public Bitvector union(Bitvector b)
     {
       LongBitvector that = cast(b);
-      return new LongBitvector(new Bitvector[] {
-          vectors[0].union(that.vectors[0]),
-          vectors[1].union(that.vectors[1]),
-          vectors[2].union(that.vectors[2]),
-          vectors[3].union(that.vectors[3]),
-          vectors[4].union(that.vectors[4]),
-          vectors[5].union(that.vectors[5]),
-          vectors[6].union(that.vectors[6]),
-          vectors[7].union(that.vectors[7]),
-          vectors[8].union(that.vectors[8]),
-      });
+      long l = lo | that.lo;
+      long h = hi | that.hi;
+
+      if(l == lo && h == hi) {
+        return this;
+      }
+      if(l == that.lo && h == that.hi) {
+        return that;
+      }
+      return valueOf(l, h);
     }
 
     public Bitvector subtract(Bitvector b)
     {
       LongBitvector that = cast(b);
-      return new LongBitvector(new Bitvector[] {
-          vectors[0].subtract(that.vectors[0]),
-          vectors[1].subtract(that.vectors[1]),
-          vectors[2].subtract(that.vectors[2]),
-          vectors[3].subtract(that.vectors[3]),
-          vectors[4].subtract(that.vectors[4]),
-          vectors[5].subtract(that.vectors[5]),
-          vectors[6].subtract(that.vectors[6]),
-          vectors[7].subtract(that.vectors[7]),
-          vectors[8].subtract(that.vectors[8]),
-      });
+      long l = lo & ~that.lo;
+      long h = hi & ~that.hi;
+
+      if(l == lo && h == hi) {
+        return this;
+      }
+      return valueOf(l, h);
     }
 
     @Override
     public String toString()
     {
-      return vectors[0].toString() + " " +
-          vectors[1].toString() + " " +
-          vectors[2].toString() + " " +
-          vectors[3].toString() + " " +
-          vectors[4].toString() + " " +
-          vectors[5].toString() + " " +
-          vectors[6].toString() + " " +
-          vectors[7].toString() + " " +
-          vectors[8].toString();
+      StringBuilder sb = new StringBuilder();
+      for(int i = 0; i < WIDTH; i++) {
+        if(i > 0 && i % 9 == 0) {
+          sb.append(' ');
+        }
+
+        long word = (i < LO_BITS) ? lo : hi;
+        int shift = (i < LO_BITS) ? i : i - LO_BITS;
+        sb.append((word & (1L << shift)) != 0 ? '1' : '0');
+      }
+
+      return sb.toString();
     }
 
     private LongBitvector cast(Bitvector b)
@@ -191,4 +224,15 @@ public class LongBitvectorFactory implements BitvectorFactory
       return (LongBitvector) b;
     }
   }
+
+  /**
+   * Determine the position of the nth (0-based) set bit of a word.
+   */
+  private static int nthBit(long word, int n)
+  {
+    for(int i = 0; i < n; i++) {
+      word &= word - 1;
+    }
+    return Long.numberOfTrailingZeros(word);
+  }
 }
@@ -1,8 +1,16 @@
 package brandon.inference;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * Factory for narrow bitvectors.  Every possible bitvector of the width is
+ * created up front, so each distinct set of bits has exactly one canonical
+ * instance and bitvectors can be compared by identity.
+ *
+ * By default the results of every intersection, union and difference are
+ * also precomputed into tables.  In compact mode only the canonical
+ * instances are kept, and the operations compute the encoded result with a
+ * single instruction and look up its canonical instance.  That saves
+ * building and holding three (2^width)^2 tables.
+ */
 public final class PrecomputedBitvectorFactory implements BitvectorFactory
 {
   /**
@@ -16,37 +24,37 @@ public final class PrecomputedBitvectorFactory implements BitvectorFactory
   private final Bitvector[] bitvectors;
 
   /**
-   * Precomputed instruction cache for intersections.
+   * Whether the operation tables below were built.
    */
-  private final Bitvector[][] intersections;
+  private final boolean compact;
 
   /**
-   * Precomputed instruction cache for unions.
+   * Precomputed instruction cache for intersections.  Null in compact mode.
    */
-  private final Bitvector[][] unions;
+  private final Bitvector[][] intersections;
 
   /**
-   * Precomputed instruction cache for differences.
+   * Precomputed instruction cache for unions.  Null in compact mode.
    */
-  private final Bitvector[][] differences;
+  private final Bitvector[][] unions;
 
   /**
-   * Mapping of an encoded bitvector with a single bit set, to the value of that
-   * set bit.  Note: The bits are 1-based instead of 0-based.  E.g. 0100 -> 3.
+   * Precomputed instruction cache for differences.  Null in compact mode.
    */
-  private final Map<Integer, Integer> bitValues;
+  private final Bitvector[][] differences;
 
   PrecomputedBitvectorFactory(int width)
+  {
+    this(width, false);
+  }
+
+  PrecomputedBitvectorFactory(int width, boolean compact)
   {
     // Don't want to consume too much memory with the precomputation caches
     assert width < 20;
 
     this.width = width;
-
-    bitValues = new HashMap<Integer, Integer>();
-    for(int i = 0; i < width; i++) {
-      bitValues.put(1 << i, i);
-    }
+    this.compact = compact;
 
     // Number of bitvectors of the specified width
     int n = (1 << width);
@@ -57,6 +65,13 @@ public final class PrecomputedBitvectorFactory implements BitvectorFactory
       bitvectors[i] = new PrecomputedBitvector(i, bits);
     }
 
+    if(compact) {
+      intersections = null;
+      unions = null;
+      differences = null;
+      return;
+    }
+
     intersections = new Bitvector[n][n];
     unions = new Bitvector[n][n];
     differences = new Bitvector[n][n];
@@ -99,17 +114,44 @@ public final class PrecomputedBitvectorFactory implements BitvectorFactory
     return bitvectors[bitvectors.length - 1];
   }
 
+  /**
+   * Get the bitvector with the given encoding, bit i of the int set when bit
+   * i of the bitvector is.
+   */
+  public Bitvector decode(int encoded)
+  {
+    assert 0 <= encoded && encoded < bitvectors.length : encoded;
+    return bitvectors[encoded];
+  }
+
+  /**
+   * Get the encoding of a bitvector from this factory, the inverse of
+   * <code>decode</code>.
+   */
+  public int getEncoding(Bitvector b)
+  {
+    assert b instanceof PrecomputedBitvector;
+    assert b.getWidth() == width;
+    return ((PrecomputedBitvector) b).encoded;
+  }
+
+  /**
+   * Whether this factory computes operations instead of looking them up.
+   */
+  public boolean isCompact()
+  {
+    return compact;
+  }
+
   /**
    * Caclulate which bits are set in the encoded representation of a bitvector.
-   * Note: The bits are represented as 1-based not 0-based.
    */
-  private int[] calculateBits(int encoded)
+  private static int[] calculateBits(int encoded)
   {
     int[] bits = new int[Integer.bitCount(encoded)];
     for(int i = 0; i < bits.length; i++) {
-      int mask = Integer.lowestOneBit(encoded);
-      bits[i] = bitValues.get(mask);
-      encoded &= ~mask;
+      bits[i] = Integer.numberOfTrailingZeros(encoded);
+      encoded &= encoded - 1;
     }
 
     return bits;
@@ -152,16 +194,25 @@ public final class PrecomputedBitvectorFactory implements BitvectorFactory
 
     public Bitvector intersect(Bitvector b)
     {
+      if(compact) {
+        return bitvectors[encoded & cast(b).encoded];
+      }
       return intersections[encoded][cast(b).encoded];
     }
 
     public Bitvector union(Bitvector b)
     {
+      if(compact) {
+        return bitvectors[encoded | cast(b).encoded];
+      }
       return unions[encoded][cast(b).encoded];
     }
 
     public Bitvector subtract(Bitvector b)
     {
+      if(compact) {
+        return bitvectors[encoded & ~cast(b).encoded];
+      }
       return differences[encoded][cast(b).encoded];
     }
 
@@ -193,8 +244,12 @@ public final class PrecomputedBitvectorFactory implements BitvectorFactory
    */
   public static void main(String[] args)
   {
-    PrecomputedBitvectorFactory factory = new PrecomputedBitvectorFactory(5);
+    test(new PrecomputedBitvectorFactory(5, false));
+    test(new PrecomputedBitvectorFactory(5, true));
+  }
 
+  private static void test(PrecomputedBitvectorFactory factory)
+  {
     Bitvector all = factory.getAll();
     assert all.getWidth() == 5;
     assert all.getBitCount() == 5;
@@ -0,0 +1,96 @@
+package brandon.inference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inference rules that can be run on top of naked and hidden singles.
+ *
+ * The rules to run are chosen with
+ * <code>-Dbrandon.inference.rules=locked,naked,hidden,xwing</code> (or
+ * <code>all</code>), and are tried in the order they are listed.  By default
+ * only singles are used.
+ */
+public enum Rule
+{
+  /**
+   * Pointing and claiming: a value whose places in a box all lie in one line
+   * (or whose places in a line all lie in one box) can be removed from the
+   * rest of that line (or box).
+   */
+  LOCKED_CANDIDATES("locked"),
+
+  /**
+   * Naked pairs and triples: k cells in a group that between them only have
+   * k possible values take those values away from the rest of the group.
+   */
+  NAKED_SUBSETS("naked"),
+
+  /**
+   * Hidden pairs and triples: k values that can only go in the same k cells
+   * of a group take every other value away from those cells.
+   */
+  HIDDEN_SUBSETS("hidden"),
+
+  /**
+   * X-wing: a value that can only go in the same two columns of two rows can
+   * be removed from the rest of those columns, and the same for rows.
+   */
+  X_WING("xwing");
+
+  /**
+   * System property with a comma separated list of the rules to run.
+   */
+  public static final String PROPERTY = "brandon.inference.rules";
+
+  /**
+   * The rules chosen by <code>PROPERTY</code>, in the order to try them.
+   */
+  static final Rule[] ENABLED = parse(System.getProperty(PROPERTY, ""));
+
+  private final String key;
+
+  private Rule(String key)
+  {
+    this.key = key;
+  }
+
+  /**
+   * Name of the rule in <code>PROPERTY</code> and in the stats counters.
+   */
+  public String getKey()
+  {
+    return key;
+  }
+
+  /**
+   * Parse a comma separated list of rule names.
+   */
+  public static Rule[] parse(String rules)
+  {
+    rules = rules.trim();
+    if(rules.equals("all")) {
+      return values();
+    }
+
+    List<Rule> parsed = new ArrayList<Rule>();
+    if(rules.length() > 0) {
+      for(String name : rules.split(",")) {
+        parsed.add(forKey(name.trim()));
+      }
+    }
+
+    return parsed.toArray(new Rule[parsed.size()]);
+  }
+
+  private static Rule forKey(String key)
+  {
+    for(Rule rule : values()) {
+      if(rule.key.equals(key)) {
+        return rule;
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown inference rule: " + key);
+  }
+}
@@ -0,0 +1,367 @@
+package brandon.inference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementations of the inference rules in <code>Rule</code>.
+ *
+ * Each rule makes a single pass over the board, removing every possibility it
+ * can prove impossible.  Patterns are found from the possibilities at the start
+ * of the pass; a possibility removed part way through only makes the board more
+ * constrained, so anything proved from the earlier state still holds.
+ *
+ * Holds scratch space for a single solve, so an instance must not be shared
+ * between threads.
+ */
+final class Rules
+{
+  /**
+   * Largest naked or hidden subset that is looked for.
+   */
+  private static final int MAX_SUBSET = 3;
+
+  /**
+   * Every line (row or column) and box that overlap, as {line, box} pairs.
+   */
+  private static final int[][] LINE_BOXES;
+  static {
+    List<int[]> pairs = new ArrayList<int[]>();
+    for(int line = 0; line < 2 * Cells.N; line++) {
+      for(int box = 2 * Cells.N; box < Cells.NUM_GROUPS; box++) {
+        if(Cells.getGroupCells(line).intersects(Cells.getGroupCells(box))) {
+          pairs.add(new int[] { line, box });
+        }
+      }
+    }
+
+    LINE_BOXES = pairs.toArray(new int[pairs.size()][]);
+  }
+
+  private final Stats stats;
+  private final BitvectorFactory factory = Bitvectors.getFactory(Cells.N + 1);
+  private final Bitvector allValues = factory.getAll().subtract(factory.encode(0));
+
+  // Which cells each value can go in, across the whole board and within the current group
+  private final CellSet[] places = new CellSet[Cells.N + 1];
+  private final CellSet[] group_places = new CellSet[Cells.N + 1];
+
+  private final CellSet inLine = new CellSet();
+  private final CellSet inBox = new CellSet();
+  private final CellSet subset = new CellSet();
+  private final CellSet targets = new CellSet();
+  private final int[] subset_ids = new int[Cells.N];
+  private final int[] subset_values = new int[Cells.N];
+  private final int[] wing_masks = new int[Cells.N];
+
+  /**
+   * Index into <code>Rule.ENABLED</code> of the rule being run, for the stats.
+   */
+  private int current;
+
+  Rules(Stats stats)
+  {
+    this.stats = stats;
+    for(int value = 0; value <= Cells.N; value++) {
+      places[value] = new CellSet();
+      group_places[value] = new CellSet();
+    }
+  }
+
+  /**
+   * Run the i'th enabled rule once over the board.  Returns false on a
+   * contradiction.
+   */
+  final boolean apply(int i, Board board)
+  {
+    long start = Stats.ENABLED ? System.nanoTime() : 0;
+    current = i;
+
+    boolean consistent;
+    switch(Rule.ENABLED[i]) {
+      case LOCKED_CANDIDATES:
+        consistent = inferLockedCandidates(board);
+        break;
+      case NAKED_SUBSETS:
+        consistent = inferNakedSubsets(board);
+        break;
+      case HIDDEN_SUBSETS:
+        consistent = inferHiddenSubsets(board);
+        break;
+      case X_WING:
+        consistent = inferXWings(board);
+        break;
+      default:
+        throw new AssertionError(Rule.ENABLED[i]);
+    }
+
+    if(Stats.ENABLED) {
+      stats.rulePasses[i]++;
+      stats.ruleNanos[i] += System.nanoTime() - start;
+    }
+
+    return consistent;
+  }
+
+  /**
+   * Find values whose places within a box are all in one line (pointing), or
+   * whose places within a line are all in one box (claiming).
+   */
+  private boolean inferLockedCandidates(Board board)
+  {
+    findPlaces(board);
+
+    for(int[] pair : LINE_BOXES) {
+      CellSet line = Cells.getGroupCells(pair[0]);
+      CellSet box = Cells.getGroupCells(pair[1]);
+
+      for(int value = 1; value <= Cells.N; value++) {
+        inLine.setIntersection(places[value], line);
+        inBox.setIntersection(places[value], box);
+
+        // Pointing, the value has to go in the part of the line inside the box
+        if(!inBox.isEmpty() && line.containsAll(inBox)) {
+          targets.setDifference(inLine, box);
+          if(!eliminate(board, targets, factory.encode(value))) {
+            return false;
+          }
+        }
+
+        // Claiming, the value has to go in the part of the box inside the line
+        if(!inLine.isEmpty() && box.containsAll(inLine)) {
+          targets.setDifference(inBox, line);
+          if(!eliminate(board, targets, factory.encode(value))) {
+            return false;
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Find pairs and triples of cells in a group that between them only have
+   * as many possible values as there are cells.
+   */
+  private boolean inferNakedSubsets(Board board)
+  {
+    for(int groupid = 0; groupid < Cells.NUM_GROUPS; groupid++) {
+      int count = 0;
+      for(int id : Cells.getGroupMembers(groupid)) {
+        int size = board.getPossibilities(id).getBitCount();
+        if(1 < size && size <= MAX_SUBSET) {
+          subset_ids[count++] = id;
+        }
+      }
+
+      for(int i = 0; i < count; i++) {
+        Bitvector first = board.getPossibilities(subset_ids[i]);
+
+        for(int j = i + 1; j < count; j++) {
+          Bitvector pair = first.union(board.getPossibilities(subset_ids[j]));
+          int size = pair.getBitCount();
+
+          if(size == 2) {
+            subset.clear().add(subset_ids[i]).add(subset_ids[j]);
+            targets.setDifference(Cells.getGroupCells(groupid), subset);
+            if(!eliminate(board, targets, pair)) {
+              return false;
+            }
+          }
+
+          if(size > MAX_SUBSET) {
+            continue;
+          }
+
+          for(int k = j + 1; k < count; k++) {
+            Bitvector triple = pair.union(board.getPossibilities(subset_ids[k]));
+
+            if(triple.getBitCount() == 3) {
+              subset.clear().add(subset_ids[i]).add(subset_ids[j]).add(subset_ids[k]);
+              targets.setDifference(Cells.getGroupCells(groupid), subset);
+              if(!eliminate(board, targets, triple)) {
+                return false;
+              }
+            }
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Find pairs and triples of values in a group that can only go in as many
+   * cells as there are values.
+   */
+  private boolean inferHiddenSubsets(Board board)
+  {
+    findPlaces(board);
+
+    for(int groupid = 0; groupid < Cells.NUM_GROUPS; groupid++) {
+      CellSet group = Cells.getGroupCells(groupid);
+
+      int count = 0;
+      for(int value = 1; value <= Cells.N; value++) {
+        group_places[value].setIntersection(places[value], group);
+
+        int size = group_places[value].size();
+        if(1 < size && size <= MAX_SUBSET) {
+          subset_values[count++] = value;
+        }
+      }
+
+      for(int i = 0; i < count; i++) {
+        int first = subset_values[i];
+
+        for(int j = i + 1; j < count; j++) {
+          int second = subset_values[j];
+          subset.setUnion(group_places[first], group_places[second]);
+          int size = subset.size();
+
+          if(size == 2) {
+            Bitvector values = factory.encode(first).union(factory.encode(second));
+            if(!eliminate(board, subset, allValues.subtract(values))) {
+              return false;
+            }
+          }
+
+          if(size > MAX_SUBSET) {
+            continue;
+          }
+
+          for(int k = j + 1; k < count; k++) {
+            int third = subset_values[k];
+            targets.setUnion(subset, group_places[third]);
+
+            if(targets.size() == 3) {
+              Bitvector values = factory.encode(first).union(factory.encode(second)).union(factory.encode(third));
+              if(!eliminate(board, targets, allValues.subtract(values))) {
+                return false;
+              }
+            }
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Find values that can only go in the same two columns of two rows, or the
+   * same two rows of two columns.
+   */
+  private boolean inferXWings(Board board)
+  {
+    findPlaces(board);
+
+    for(int value = 1; value <= Cells.N; value++) {
+      Bitvector valueMask = factory.encode(value);
+
+      for(int rows = 0; rows < 2; rows++) {
+        // Which cover lines (columns for rows, rows for columns) the value can go in, for each base
+        // line where there are exactly two
+        for(int i = 0; i < Cells.N; i++) {
+          inLine.setIntersection(places[value], Cells.getGroupCells(baseGroup(rows, i)));
+
+          wing_masks[i] = 0;
+          if(inLine.size() == 2) {
+            for(int id = inLine.first(); id != -1; id = inLine.next(id)) {
+              wing_masks[i] |= 1 << coverIndex(rows, id);
+            }
+          }
+        }
+
+        for(int i = 0; i < Cells.N; i++) {
+          if(wing_masks[i] == 0) {
+            continue;
+          }
+
+          for(int j = i + 1; j < Cells.N; j++) {
+            if(wing_masks[j] != wing_masks[i]) {
+              continue;
+            }
+
+            targets.clear();
+            for(int cover = 0; cover < Cells.N; cover++) {
+              if((wing_masks[i] & (1 << cover)) != 0) {
+                targets.union(Cells.getGroupCells(coverGroup(rows, cover)));
+              }
+            }
+            targets.subtract(Cells.getGroupCells(baseGroup(rows, i)));
+            targets.subtract(Cells.getGroupCells(baseGroup(rows, j)));
+
+            if(!eliminate(board, targets, valueMask)) {
+              return false;
+            }
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
+  private static int baseGroup(int rows, int i)
+  {
+    return rows == 1 ? i : Cells.N + i;
+  }
+
+  private static int coverGroup(int rows, int i)
+  {
+    return rows == 1 ? Cells.N + i : i;
+  }
+
+  private static int coverIndex(int rows, int id)
+  {
+    return rows == 1 ? Cells.getColumn(id) - Cells.N : Cells.getRow(id);
+  }
+
+  /**
+   * Record which cells each value can still go in.
+   */
+  private void findPlaces(Board board)
+  {
+    for(int value = 1; value <= Cells.N; value++) {
+      places[value].clear();
+    }
+
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      for(int value : board.getPossibleValues(id)) {
+        places[value].add(id);
+      }
+    }
+  }
+
+  /**
+   * Remove the given values from every cell in the targets, counting a hit
+   * for the running rule if anything was removed.  Returns false on a
+   * contradiction.
+   */
+  private boolean eliminate(Board board, CellSet targets, Bitvector values)
+  {
+    int removed = 0;
+
+    for(int id = targets.first(); id != -1; id = targets.next(id)) {
+      Bitvector hit = board.getPossibilities(id).intersect(values);
+      if(hit == factory.getNone()) {
+        continue;
+      }
+
+      removed += hit.getBitCount();
+      if(!board.removePossibilities(id, values)) {
+        return false;
+      }
+    }
+
+    if(Stats.ENABLED && removed > 0) {
+      stats.ruleHits[current]++;
+      stats.ruleEliminations[current] += removed;
+    }
+
+    return true;
+  }
+}
@@ -1,14 +1,21 @@
 package brandon.inference;
 
-import java.util.Arrays;
-
-public final class Solver implements sudoku.Solver
+public final class Solver implements sudoku.FlatSolver, sudoku.SolutionCounter, sudoku.Instrumented
 {
   private static final boolean OUTPUT = false;
 
+  static {
+    // Build the bitvector tables when the solver is loaded rather than when the first board is
+    Bitvectors.warmUp();
+  }
+
+  private final Stats stats = new Stats();
+  private final Rules rules = new Rules(stats);
+  private final Brancher brancher = new Brancher(Branching.SELECTED, Branching.LCV);
+
   public final void solve(int[][] array)
   {
-    Board unsolved = Board.fromArray(array);
+    Board unsolved = Board.fromArray(array, stats);
     if(OUTPUT) {
       System.out.println("unsolved:");
       System.out.println(unsolved);
@@ -35,87 +42,191 @@ public final class Solver implements sudoku.Solver
     }
   }
 
-  private final Board solve(Board board)
+  public final void solve(byte[] cells, int offset)
   {
-    return infer(board);
+    Board solved = solve(Board.fromFlat(cells, offset, stats));
+    Board.toFlat(solved, cells, offset);
   }
 
-  private final Board search(Board board)
+  public final void solveAll(byte[] cells, int offset, int count)
   {
-    int id = board.getCellToSearch();
-    if(id == -1) {
-      // Nothing left to search, we're done!
-      return board;
+    for(int i = 0; i < count; i++) {
+      solve(cells, offset + i * Cells.NUM_CELLS);
     }
+  }
 
-    int[] values = board.getPossibleValues(id);
-    for(int value : values) {
-      Board copy = Board.fromBoard(board);
-      if(!copy.setValue(id, value)) {
-        continue;
-      }
+  public final int countSolutions(int[][] array, int limit)
+  {
+    assert limit >= 1 : limit;
 
-      copy = infer(copy);
-      if(copy != null) {
-        return copy;
-      }
+    Board board = Board.fromArray(array, stats);
+    if(board == null) {
+      // The givens contradict each other
+      return 0;
     }
 
-    // Nothing worked, backtrack
-    return null;
+    return search(board, limit);
   }
 
-  private final Board infer(Board board)
+  /**
+   * Determine whether a board is solved by inference alone, without having to
+   * guess.  The board is left unchanged.
+   */
+  public final boolean solvesWithoutSearch(int[][] array)
   {
-    boolean simplified;
-
-    do {
-      int oldVersion = board.getVersion();
-      board = inferHiddenSingles(board);
-      if(board == null) {
-        return null;
-      }
+    Board board = Board.fromArray(array, stats);
+    return board != null && infer(board) && board.getCellToSearch() == -1;
+  }
 
-      simplified = (board.getVersion() != oldVersion);
-    } while(simplified);
+  public final String[] getCounterNames()
+  {
+    return Stats.ENABLED ? Stats.NAMES.clone() : new String[0];
+  }
 
-    return search(board);
+  public final long[] getCounters()
+  {
+    return Stats.ENABLED ? stats.toArray() : new long[0];
   }
 
-  // Within a group keep a record of which cells have which possible values (only keep one around)
-  final int infer_length = 10;
-  final int[] infer_possibilities = new int[infer_length];
-  final int[] infer_counts = new int[infer_length * Cells.NUM_GROUPS];
+  // Explicit stack for the search, one frame per branch: the board's trail mark before branching,
+  // the alternatives to try (as cell and value pairs), how many there are and the index of the
+  // next one to try.
+  private final int[] search_marks = new int[Cells.NUM_CELLS];
+  private final int[][] search_ids = new int[Cells.NUM_CELLS][Cells.N];
+  private final int[][] search_values = new int[Cells.NUM_CELLS][Cells.N];
+  private final int[] search_counts = new int[Cells.NUM_CELLS];
+  private final int[] search_next = new int[Cells.NUM_CELLS];
 
   /**
-   * Find all hidden singles (cells that are the only possible place in a group for a given value).
+   * Solve a board by inference, branching whenever inference gets stuck.
+   * Returns null if the board has no solution.
    */
-  private final Board inferHiddenSingles(Board board)
+  private final Board solve(Board board)
   {
-    Arrays.fill(infer_counts, 0);
-
-    for(int groupid = 0; groupid < Cells.NUM_GROUPS; groupid++) {
-      int[] members = Cells.getGroupMembers(groupid);
-      for(int id : members) {
-        int[] values = board.getPossibleValues(id);
-
-        // Only deal with this cell if its value hasn't already been fixed
-        if(values.length > 1) {
-          for(int value : values) {
-            infer_possibilities[value] = id;
-            infer_counts[groupid * infer_length + value]++;
+    return (search(board, 1) == 1) ? board : null;
+  }
+
+  /**
+   * Count the solutions of a board by inference, branching whenever inference
+   * gets stuck, and stop once the limit has been reached.  The search runs as
+   * a loop over an explicit stack instead of recursing, and backtracks by
+   * undoing the board's trail.  When the limit is reached the board is left
+   * holding the last solution found.
+   */
+  private final int search(Board board, int limit)
+  {
+    int solutions = 0;
+    int depth = 0;
+    boolean consistent = infer(board);
+
+    while(true) {
+      if(consistent) {
+        int count = brancher.branch(board, search_ids[depth], search_values[depth]);
+        if(count == 0) {
+          // Nothing left to search, we've found a solution
+          solutions++;
+          if(solutions == limit) {
+            return solutions;
           }
+        } else {
+          if(Stats.ENABLED) {
+            stats.searchNodes++;
+          }
+
+          search_marks[depth] = board.mark();
+          search_counts[depth] = count;
+          search_next[depth] = 0;
+          depth++;
         }
       }
 
-      for(int value = 1; value < infer_length; value++) {
-        if(infer_counts[groupid * infer_length + value] == 1) {
-          if(!board.setValue(infer_possibilities[value], value)) {
-            return null;
+      // Try the next alternative of the innermost branch, backtracking out of
+      // any branches that have run out of alternatives
+      consistent = false;
+      while(!consistent) {
+        if(depth == 0) {
+          return solutions;
+        }
+
+        int top = depth - 1;
+        board.undo(search_marks[top]);
+
+        if(search_next[top] == search_counts[top]) {
+          // Nothing worked, backtrack
+          if(Stats.ENABLED) {
+            stats.backtracks++;
           }
+          depth--;
+          continue;
         }
+
+        int next = search_next[top]++;
+        if(Stats.ENABLED) {
+          stats.guesses++;
+        }
+
+        consistent = board.setValue(search_ids[top][next], search_values[top][next]) && infer(board);
+      }
+    }
+  }
+
+  /**
+   * Find hidden singles until there are none left, then run each enabled
+   * inference rule in turn, going back to hidden singles as soon as a rule
+   * changes the board.  Returns false on a contradiction.
+   */
+  private final boolean infer(Board board)
+  {
+    while(true) {
+      boolean simplified;
+
+      do {
+        int oldVersion = board.getVersion();
+        if(inferHiddenSingles(board) == null) {
+          return false;
+        }
+
+        simplified = (board.getVersion() != oldVersion);
+      } while(simplified);
+
+      int oldVersion = board.getVersion();
+      for(int i = 0; i < Rule.ENABLED.length && board.getVersion() == oldVersion; i++) {
+        if(!rules.apply(i, board)) {
+          return false;
+        }
+      }
+
+      if(board.getVersion() == oldVersion) {
+        return true;
       }
     }
+  }
+
+  // Groups to look for hidden singles in, taken from the board each pass.  Scratch space for a
+  // single solve, so a solver instance must not be shared between threads.
+  private final brandon.grid.CellSet infer_groups = new brandon.grid.CellSet(Cells.NUM_GROUPS);
+
+  /**
+   * Find all hidden singles (cells that are the only possible place in a group for a given value).
+   * Only the groups that have changed since the last pass are looked at, the rest had no hidden
+   * singles then and still don't.  Returns null on a contradiction.
+   */
+  final Board inferHiddenSingles(Board board)
+  {
+    brandon.grid.CellSet groups = board.takeDirtyGroups(infer_groups);
+    if(Stats.ENABLED) {
+      stats.hiddenSinglePasses++;
+      stats.hiddenSingleGroups += groups.size();
+    }
+
+    int singles = board.setHiddenSingles(groups);
+    if(singles == -1) {
+      return null;
+    }
+
+    if(Stats.ENABLED) {
+      stats.hiddenSingles += singles;
+    }
 
     return board;
   }
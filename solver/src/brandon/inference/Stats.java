@@ -0,0 +1,131 @@
+package brandon.inference;
+
+/**
+ * Counters for the work done by a single solver instance.
+ *
+ * Counting is switched on with <code>-Dbrandon.inference.stats=true</code>.
+ * Every counter update is guarded by <code>ENABLED</code>, which is a static
+ * final so the JIT removes the updates entirely when counting is off.
+ */
+public final class Stats
+{
+  public static final boolean ENABLED = Boolean.getBoolean("brandon.inference.stats");
+
+  private static final String[] BASE_NAMES = {
+      "search nodes",
+      "guesses",
+      "backtracks",
+      "propagations",
+      "contradictions",
+      "hidden single passes",
+      "hidden single groups",
+      "hidden singles",
+  };
+
+  private static final String[] RULE_NAMES = {
+      "passes",
+      "hits",
+      "eliminations",
+      "nanos",
+  };
+
+  /**
+   * Names of the counters, the ones above followed by the counters of each
+   * enabled inference rule.
+   */
+  static final String[] NAMES = new String[BASE_NAMES.length + RULE_NAMES.length * Rule.ENABLED.length];
+  static {
+    System.arraycopy(BASE_NAMES, 0, NAMES, 0, BASE_NAMES.length);
+    for(int i = 0; i < Rule.ENABLED.length; i++) {
+      for(int j = 0; j < RULE_NAMES.length; j++) {
+        NAMES[BASE_NAMES.length + i * RULE_NAMES.length + j] = Rule.ENABLED[i].getKey() + " " + RULE_NAMES[j];
+      }
+    }
+  }
+
+  /**
+   * Number of search nodes that had something to branch on.
+   */
+  long searchNodes;
+
+  /**
+   * Number of alternatives tried while branching.
+   */
+  long guesses;
+
+  /**
+   * Number of search nodes where every value failed.
+   */
+  long backtracks;
+
+  /**
+   * Number of calls to <code>Board.setValue</code>, including the ones it
+   * makes itself for naked singles.
+   */
+  long propagations;
+
+  /**
+   * Number of times <code>Board.setValue</code> found a cell with no
+   * possible values left.
+   */
+  long contradictions;
+
+  /**
+   * Number of calls to <code>inferHiddenSingles</code>.
+   */
+  long hiddenSinglePasses;
+
+  /**
+   * Number of groups looked at by <code>inferHiddenSingles</code>.
+   */
+  long hiddenSingleGroups;
+
+  /**
+   * Number of hidden singles found.
+   */
+  long hiddenSingles;
+
+  /**
+   * Number of times each enabled rule was run, indexed like
+   * <code>Rule.ENABLED</code>.
+   */
+  final long[] rulePasses = new long[Rule.ENABLED.length];
+
+  /**
+   * Number of patterns each rule found that removed at least one possibility.
+   */
+  final long[] ruleHits = new long[Rule.ENABLED.length];
+
+  /**
+   * Number of possibilities each rule removed.
+   */
+  final long[] ruleEliminations = new long[Rule.ENABLED.length];
+
+  /**
+   * Time spent in each rule, in nanoseconds.
+   */
+  final long[] ruleNanos = new long[Rule.ENABLED.length];
+
+  long[] toArray()
+  {
+    long[] counters = new long[NAMES.length];
+    counters[0] = searchNodes;
+    counters[1] = guesses;
+    counters[2] = backtracks;
+    counters[3] = propagations;
+    counters[4] = contradictions;
+    counters[5] = hiddenSinglePasses;
+    counters[6] = hiddenSingleGroups;
+    counters[7] = hiddenSingles;
+
+    for(int i = 0; i < Rule.ENABLED.length; i++) {
+      int base = BASE_NAMES.length + i * RULE_NAMES.length;
+      counters[base] = rulePasses[i];
+      counters[base + 1] = ruleHits[i];
+      counters[base + 2] = ruleEliminations[i];
+      counters[base + 3] = ruleNanos[i];
+    }
+
+    return counters;
+  }
+}
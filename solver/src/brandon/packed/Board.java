@@ -0,0 +1,222 @@
+package brandon.packed;
+
+import brandon.inference.Cells;
+
+import java.util.Arrays;
+
+/**
+ * Representation of a sudoku board that keeps the possibilities for every
+ * cell packed into a primitive array instead of in bitvector objects.  Bit
+ * <code>v</code> of a cell's mask is set when <code>v</code> is still a
+ * possible value for that cell (bit 0 is never used).
+ */
+public final class Board
+{
+  /**
+   * Mask with every value (1-Cells.N) set.
+   */
+  static final int ALL_VALUES = ((1 << (Cells.N + 1)) - 1) & ~1;
+
+  /**
+   * Possibilities for every cell in the board.
+   */
+  private final short[] possibilities;
+
+  /**
+   * Version of the board.  Incremented each time the board is mutated.
+   */
+  private int version;
+
+  private Board(boolean fill)
+  {
+    possibilities = new short[Cells.NUM_CELLS];
+
+    if(fill) {
+      Arrays.fill(possibilities, (short) ALL_VALUES);
+      version = 0;
+    }
+  }
+
+  public final boolean setValue(int id, int value)
+  {
+    assert 0 <= id && id < Cells.NUM_CELLS : id;
+    assert 1 <= value && value <= Cells.N : value;
+
+    int valueMask = 1 << value;
+
+    // Check to see if setting the specified value would cause a contradiction
+    if((possibilities[id] & valueMask) == 0) {
+      return false;
+    }
+
+    // Set the value of the specified cell
+    possibilities[id] = (short) valueMask;
+
+    // Go to each neighboring cell and update their possibility lists,
+    // detecting any contradictions
+    int[] neighbors = Cells.getNeighborIds(id);
+    for(int neighborId : neighbors) {
+      int oldPossibilityMask = possibilities[neighborId];
+
+      // Nothing was changed
+      if((oldPossibilityMask & valueMask) == 0) {
+        continue;
+      }
+
+      int possibilityMask = oldPossibilityMask & ~valueMask;
+
+      // Contradiction
+      if(possibilityMask == 0) {
+        return false;
+      }
+
+      possibilities[neighborId] = (short) possibilityMask;
+
+      if((possibilityMask & (possibilityMask - 1)) == 0) {
+        if(!setValue(neighborId, Integer.numberOfTrailingZeros(possibilityMask))) {
+          return false;
+        }
+      }
+    }
+
+    version++;
+    return true;
+  }
+
+  public final int getCellToSearch()
+  {
+    int bestCount = Integer.MAX_VALUE;
+    int bestId = -1;
+
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      int count = Integer.bitCount(possibilities[id]);
+      if(1 < count && count < bestCount) {
+        bestCount = count;
+        bestId = id;
+
+        if(bestCount == 2) {
+          break;
+        }
+      }
+    }
+
+    return bestId;
+  }
+
+  /**
+   * Determine the mask of possible values for a cell.
+   */
+  public final int getPossibilities(int id)
+  {
+    return possibilities[id];
+  }
+
+  public final int getVersion()
+  {
+    return version;
+  }
+
+  public final String toString()
+  {
+    StringBuilder sb = new StringBuilder();
+    for(int i = 0; i < Cells.N; i++) {
+      if(i > 0 && i % 3 == 0) {
+        sb.append("-------------------------------+-------------------------------+-------------------------------\n");
+      }
+
+      for(int j = 0; j < Cells.N; j++) {
+        if(j > 0 && j % 3 == 0) {
+          sb.append(" |");
+        }
+
+        sb.append(' ');
+        int mask = possibilities[i * Cells.N + j];
+        for(int k = 1; k <= Cells.N; k++) {
+          sb.append((mask & (1 << k)) != 0 ? Integer.toString(k) : ".");
+        }
+      }
+      sb.append(" \n");
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Construct a board from an array.
+   */
+  public static Board fromArray(int[][] array)
+  {
+    Board board = new Board(true);
+    assert array.length == Cells.N;
+
+    for(int i = 0; i < Cells.N; i++) {
+      assert array[i].length == Cells.N;
+
+      for(int j = 0; j < Cells.N; j++) {
+        int value = array[i][j];
+        if(value != sudoku.Solver.MISSING) {
+          board.setValue(i * Cells.N + j, value);
+        }
+      }
+    }
+
+    return board;
+  }
+
+  /**
+   * Construct a board from a flat buffer of cells.
+   */
+  public static Board fromFlat(byte[] cells, int offset)
+  {
+    Board board = new Board(true);
+
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      int value = cells[offset + id];
+      if(value != sudoku.Solver.MISSING) {
+        board.setValue(id, value);
+      }
+    }
+
+    return board;
+  }
+
+  /**
+   * Construct a board from another board.  This is a flat copy of the
+   * possibility masks.
+   */
+  public static Board fromBoard(Board other)
+  {
+    Board board = new Board(false);
+    board.version = other.version;
+    System.arraycopy(other.possibilities, 0, board.possibilities, 0, Cells.NUM_CELLS);
+    return board;
+  }
+
+  /**
+   * Copy the data in the specified board into the provided array.
+   */
+  public static void toArray(Board board, int[][] array)
+  {
+    assert array.length == Cells.N;
+
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      int mask = board.possibilities[id];
+      assert Integer.bitCount(mask) == 1;
+
+      array[id / Cells.N][id % Cells.N] = Integer.numberOfTrailingZeros(mask);
+    }
+  }
+
+  /**
+   * Copy the data in the specified board into a flat buffer of cells.
+   */
+  public static void toFlat(Board board, byte[] cells, int offset)
+  {
+    for(int id = 0; id < Cells.NUM_CELLS; id++) {
+      int mask = board.possibilities[id];
+      assert Integer.bitCount(mask) == 1;
+
+      cells[offset + id] = (byte) Integer.numberOfTrailingZeros(mask);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package brandon.packed;
+
+import brandon.inference.Cells;
+
+import java.util.Arrays;
+
+/**
+ * Solver that uses the same inference and search strategy as
+ * <code>brandon.inference.Solver</code>, but runs on the primitive packed
+ * board representation.
+ */
+public final class Solver implements sudoku.FlatSolver
+{
+  public final void solve(int[][] array)
+  {
+    Board solved = infer(Board.fromArray(array));
+    Board.toArray(solved, array);
+  }
+
+  public final void solve(byte[] cells, int offset)
+  {
+    Board solved = infer(Board.fromFlat(cells, offset));
+    Board.toFlat(solved, cells, offset);
+  }
+
+  public final void solveAll(byte[] cells, int offset, int count)
+  {
+    for(int i = 0; i < count; i++) {
+      solve(cells, offset + i * Cells.NUM_CELLS);
+    }
+  }
+
+  private final Board search(Board board)
+  {
+    int id = board.getCellToSearch();
+    if(id == -1) {
+      // Nothing left to search, we're done!
+      return board;
+    }
+
+    int values = board.getPossibilities(id);
+    while(values != 0) {
+      int value = Integer.numberOfTrailingZeros(values);
+      values &= values - 1;
+
+      Board copy = Board.fromBoard(board);
+      if(!copy.setValue(id, value)) {
+        continue;
+      }
+
+      copy = infer(copy);
+      if(copy != null) {
+        return copy;
+      }
+    }
+
+    // Nothing worked, backtrack
+    return null;
+  }
+
+  private final Board infer(Board board)
+  {
+    boolean simplified;
+
+    do {
+      int oldVersion = board.getVersion();
+      board = inferHiddenSingles(board);
+      if(board == null) {
+        return null;
+      }
+
+      simplified = (board.getVersion() != oldVersion);
+    } while(simplified);
+
+    return search(board);
+  }
+
+  // Within a group keep a record of which cells have which possible values (only keep one around)
+  private final int infer_length = Cells.N + 1;
+  private final int[] infer_possibilities = new int[infer_length];
+  private final int[] infer_counts = new int[infer_length];
+
+  /**
+   * Find all hidden singles (cells that are the only possible place in a group for a given value).
+   */
+  private final Board inferHiddenSingles(Board board)
+  {
+    for(int groupid = 0; groupid < Cells.NUM_GROUPS; groupid++) {
+      Arrays.fill(infer_counts, 0);
+
+      int[] members = Cells.getGroupMembers(groupid);
+      for(int id : members) {
+        int values = board.getPossibilities(id);
+
+        // Only deal with this cell if its value hasn't already been fixed
+        if((values & (values - 1)) != 0) {
+          while(values != 0) {
+            int value = Integer.numberOfTrailingZeros(values);
+            values &= values - 1;
+
+            infer_possibilities[value] = id;
+            infer_counts[value]++;
+          }
+        }
+      }
+
+      for(int value = 1; value < infer_length; value++) {
+        if(infer_counts[value] == 1) {
+          if(!board.setValue(infer_possibilities[value], value)) {
+            return null;
+          }
+        }
+      }
+    }
+
+    return board;
+  }
+}
@@ -0,0 +1,145 @@
+package brandon.router;
+
+/**
+ * Solver that takes a cheap first look at each board and sends it to the
+ * engine that suits it.
+ *
+ * The first look is the givens and singles of
+ * <code>brandon.bitboard.Solver</code>, without any search.  Its difficulty
+ * estimate is the number of candidates left over once singles are stuck, the
+ * sum over the unsolved cells of their possibilities less one.  Then:
+ * <ul>
+ *   <li>a board that singles have solved (no candidates left over) is done,
+ *   <li>a board with no more candidates left over than the threshold is
+ *       finished by the bitboard search, on from where singles stopped, and
+ *   <li>any other board is solved from scratch by the hard engine.
+ * </ul>
+ * Boards other than 9 x 9 go straight to <code>brandon.grid.Solver</code>,
+ * as neither engine handles them.
+ *
+ * The threshold is chosen with <code>-Dbrandon.router.threshold=count</code>
+ * and the hard engine with <code>-Dbrandon.router.hard=class</code> (by
+ * default <code>brandon.dlx.Solver</code>).  The default threshold comes from
+ * timing both ways of finishing a board, warm, by candidates left over:
+ * searching on is faster up to 199 on the corpus and on generated puzzles,
+ * and DLX from 250 up, which only boards too sparse to have a unique
+ * solution reach.
+ *
+ * Every route counts its boards, the nanoseconds they took (first look
+ * included) and the candidates they had left over, so that the threshold can
+ * be tuned from the counters the driver prints.
+ */
+public final class Solver implements sudoku.Solver, sudoku.Instrumented
+{
+  /**
+   * System property with the most candidates left over for a board to be
+   * finished by searching on from the first look.
+   */
+  public static final String THRESHOLD_PROPERTY = "brandon.router.threshold";
+
+  /**
+   * System property with the class name of the solver for hard boards.
+   */
+  public static final String HARD_PROPERTY = "brandon.router.hard";
+
+  private static final int DEFAULT_THRESHOLD = 200;
+
+  private static final int N = 9;
+
+  // Routes a board can take.
+  private static final int NO_SOLUTION = 0;
+  private static final int PROPAGATION = 1;
+  private static final int SEARCH = 2;
+  private static final int HARD = 3;
+  private static final int OTHER_SIZE = 4;
+
+  private static final String[] ROUTES = {"no solution", "propagation", "search", "hard", "other size"};
+
+  private static final String[] NAMES = new String[ROUTES.length * 3];
+  static {
+    for(int route = 0; route < ROUTES.length; route++) {
+      NAMES[route * 3] = "route " + ROUTES[route] + " boards";
+      NAMES[route * 3 + 1] = "route " + ROUTES[route] + " ns";
+      NAMES[route * 3 + 2] = "route " + ROUTES[route] + " candidates left";
+    }
+  }
+
+  private final int threshold;
+  private final brandon.bitboard.Solver easy = new brandon.bitboard.Solver();
+  private final sudoku.Solver hard;
+  private final sudoku.Solver otherSize = new brandon.grid.Solver();
+
+  // Counters for each route, indexed by route.
+  private final long[] boards = new long[ROUTES.length];
+  private final long[] nanos = new long[ROUTES.length];
+  private final long[] candidates = new long[ROUTES.length];
+
+  public Solver()
+  {
+    this(Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD),
+        newHard(System.getProperty(HARD_PROPERTY, "brandon.dlx.Solver")));
+  }
+
+  public Solver(int threshold, sudoku.Solver hard)
+  {
+    this.threshold = threshold;
+    this.hard = hard;
+  }
+
+  private static sudoku.Solver newHard(String className)
+  {
+    try {
+      return Class.forName(className).asSubclass(sudoku.Solver.class).getDeclaredConstructor().newInstance();
+    } catch(Exception e) {
+      throw new IllegalArgumentException("Unable to instantiate solver: " + className, e);
+    }
+  }
+
+  public final void solve(int[][] array)
+  {
+    long start = System.nanoTime();
+
+    int route;
+    int left = 0;
+    if(array.length != N) {
+      route = OTHER_SIZE;
+      otherSize.solve(array);
+    } else {
+      left = easy.propagate(array);
+      if(left == -1) {
+        // Singles proved there's no solution, leave the board as it is
+        route = NO_SOLUTION;
+        left = 0;
+      } else if(left == 0) {
+        route = PROPAGATION;
+        easy.complete(array);
+      } else if(left <= threshold) {
+        route = SEARCH;
+        easy.complete(array);
+      } else {
+        route = HARD;
+        hard.solve(array);
+      }
+    }
+
+    boards[route]++;
+    nanos[route] += System.nanoTime() - start;
+    candidates[route] += left;
+  }
+
+  public final String[] getCounterNames()
+  {
+    return NAMES.clone();
+  }
+
+  public final long[] getCounters()
+  {
+    long[] counters = new long[NAMES.length];
+    for(int route = 0; route < ROUTES.length; route++) {
+      counters[route * 3] = boards[route];
+      counters[route * 3 + 1] = nanos[route];
+      counters[route * 3 + 2] = candidates[route];
+    }
+    return counters;
+  }
+}